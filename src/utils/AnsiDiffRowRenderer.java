@@ -0,0 +1,76 @@
+package utils;
+
+import java.io.IOException;
+
+/**
+ * Renders the rows for a terminal, as the lines of a unified diff colored
+ * with ANSI escape codes: removed lines in red after a {@code -}, added lines
+ * in green after a {@code +}, their changed parts in reverse video. The C0
+ * and C1 control characters of the lines but tab are written as {@code ?},
+ * so a line can not send escape codes of its own.
+ */
+public class AnsiDiffRowRenderer implements DiffRowRenderer {
+    private static final String RED = "\u001B[31m";
+    private static final String GREEN = "\u001B[32m";
+    private static final String CYAN = "\u001B[36m";
+    private static final String REVERSE = "\u001B[7m";
+    private static final String NO_REVERSE = "\u001B[27m";
+    private static final String RESET = "\u001B[0m";
+    private static final String OLD_PREFIX = RED + "- ";
+    private static final String NEW_PREFIX = GREEN + "+ ";
+    
+    public void start(Appendable out) throws IOException {
+    }
+    
+    public void render(DiffRow row, Appendable out) throws IOException {
+        switch (row.getTag()) {
+        case SKIP:
+            out.append(CYAN).append("@@ ").append(String.valueOf(row.getSkipped()))
+                    .append(" unchanged lines @@").append(RESET).append('\n');
+            break;
+        case EQUAL:
+            out.append("  ");
+            appendText(row.getNewLine(), 0, row.getNewLine().length(), out);
+            out.append('\n');
+            break;
+        default:
+            if (row.getOldLine() != null) {
+                appendLine(OLD_PREFIX, row.getOldLine(), row.getOldChanges(), out);
+            }
+            if (row.getNewLine() != null) {
+                appendLine(NEW_PREFIX, row.getNewLine(), row.getNewChanges(), out);
+            }
+        }
+    }
+    
+    public void end(Appendable out) throws IOException {
+    }
+    
+    private static void appendLine(String prefix, String line, int[] changes, Appendable out)
+            throws IOException {
+        out.append(prefix);
+        int position = 0;
+        for (int k = 0; k < changes.length; k += 2) {
+            appendText(line, position, changes[k], out);
+            out.append(REVERSE);
+            appendText(line, changes[k], changes[k + 1], out);
+            out.append(NO_REVERSE);
+            position = changes[k + 1];
+        }
+        appendText(line, position, line.length(), out);
+        out.append(RESET).append('\n');
+    }
+    
+    private static void appendText(String line, int from, int to, Appendable out) throws IOException {
+        int start = from;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            // C0 controls but tab, DEL, and the C1 controls such as CSI and OSC
+            if (c < ' ' && c != '\t' || c >= '\u007F' && c <= '\u009F') {
+                out.append(line, start, i).append('?');
+                start = i + 1;
+            }
+        }
+        out.append(line, start, to);
+    }
+}
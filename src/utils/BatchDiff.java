@@ -0,0 +1,291 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the diffs of many (original, revised) pairs concurrently.
+ * <p>
+ * The pairs are submitted to the configured {@link Executor} largest first, so
+ * that the long diffs start early and the small ones fill the gaps at the end.
+ * At most {@code maxInFlight} diffs are submitted and not yet finished at any
+ * time: {@link #diff(Collection)} blocks until a slot is free, which bounds
+ * the work queued in the executor. A pair larger than {@code maxSize}
+ * elements fails without being diffed, and a diff running longer than the
+ * timeout is cancelled, which interrupts its thread and stops the search.
+ * </p>
+ * <pre>
+ * BatchDiff&lt;String&gt; batch = new BatchDiff.Builder&lt;String&gt;()
+ *         .executor(pool).timeout(10, TimeUnit.SECONDS).build();
+ * List&lt;Future&lt;Patch&lt;String&gt;&gt;&gt; patches = batch.diff(pairs);
+ * </pre>
+ *
+ * @param T The type of the compared elements in the 'lines'.
+ */
+public class BatchDiff<T> {
+
+    /** Cancels the diffs running past their timeout. */
+    private static ScheduledThreadPoolExecutor watchdog;
+
+    private final Executor executor;
+    private final DiffUtils.Algorithm algorithm;
+    private final int maxInFlight;
+    private final long maxSize;
+    private final long timeoutNanos;
+
+    /**
+     * An original and a revised sequence to compare.
+     *
+     * @param T The type of the compared elements in the 'lines'.
+     */
+    public static class Pair<T> {
+        private final List<T> original;
+        private final List<T> revised;
+
+        /**
+         * @param original The original text. Must not be {@code null}.
+         * @param revised The revised text. Must not be {@code null}.
+         */
+        public Pair(List<T> original, List<T> revised) {
+            if (original == null) {
+                throw new IllegalArgumentException("original must not be null");
+            }
+            if (revised == null) {
+                throw new IllegalArgumentException("revised must not be null");
+            }
+            this.original = original;
+            this.revised = revised;
+        }
+
+        /**
+         * @return the original text.
+         */
+        public List<T> getOriginal() {
+            return original;
+        }
+
+        /**
+         * @return the revised text.
+         */
+        public List<T> getRevised() {
+            return revised;
+        }
+
+        private long size() {
+            return (long) original.size() + revised.size();
+        }
+    }
+
+    /**
+     * This class used for building the BatchDiff.
+     *
+     * @param T The type of the compared elements in the 'lines'.
+     */
+    public static class Builder<T> {
+        private Executor executor;
+        private DiffUtils.Algorithm algorithm = DiffUtils.Algorithm.MYERS;
+        private int maxInFlight = 4 * Runtime.getRuntime().availableProcessors();
+        private long maxSize = Long.MAX_VALUE;
+        private long timeoutNanos = 0;
+
+        /**
+         * Set the executor computing the diffs. Required.
+         * @param executor the executor, e.g. a ForkJoinPool.
+         * @return builder with configured executor
+         */
+        public Builder<T> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Set the diff algorithm. Default: MYERS.
+         * @param algorithm the algorithm
+         * @return builder with configured algorithm
+         */
+        public Builder<T> algorithm(DiffUtils.Algorithm algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Set how many diffs may be submitted and not finished at the same
+         * time. Default: four per available processor.
+         * @param val the value to set. Values below 1 are ignored.
+         * @return builder with configured maxInFlight
+         */
+        public Builder<T> maxInFlight(int val) {
+            if (val > 0) {
+                maxInFlight = val;
+            }
+            return this;
+        }
+
+        /**
+         * Set the largest number of elements (original plus revised) of a pair
+         * which is still diffed. Default: no limit.
+         * @param val the value to set. Values below 1 are ignored.
+         * @return builder with configured maxSize
+         */
+        public Builder<T> maxSize(long val) {
+            if (val > 0) {
+                maxSize = val;
+            }
+            return this;
+        }
+
+        /**
+         * Set the time after which a running diff is cancelled. Default: no
+         * timeout.
+         * @param timeout the timeout. Values below 1 disable the timeout.
+         * @param unit the unit of the timeout
+         * @return builder with configured timeout
+         */
+        public Builder<T> timeout(long timeout, TimeUnit unit) {
+            timeoutNanos = timeout > 0 ? unit.toNanos(timeout) : 0;
+            return this;
+        }
+
+        /**
+         * Build the BatchDiff. If some parameters is not set, the default values are used.
+         * @return the customized BatchDiff
+         */
+        public BatchDiff<T> build() {
+            if (executor == null) {
+                throw new IllegalStateException("executor must be set");
+            }
+            if (algorithm == null) {
+                throw new IllegalStateException("algorithm must be set");
+            }
+            return new BatchDiff<T>(this);
+        }
+    }
+
+    private BatchDiff(Builder<T> builder) {
+        executor = builder.executor;
+        algorithm = builder.algorithm;
+        maxInFlight = builder.maxInFlight;
+        maxSize = builder.maxSize;
+        timeoutNanos = builder.timeoutNanos;
+    }
+
+    /**
+     * Submits the diff of every pair, largest first. Returns when the last
+     * pair has been submitted, which may have to wait for earlier diffs to
+     * finish.
+     * <p>
+     * The future of a pair larger than maxSize fails with a
+     * {@link DiffException}; the one of a diff cancelled by the timeout
+     * throws a {@link java.util.concurrent.CancellationException}.
+     * </p>
+     *
+     * @param pairs the pairs to compare. Must not be {@code null}.
+     * @return the future patch of every pair, in the order of the pairs.
+     * @throws InterruptedException if interrupted while waiting for a slot.
+     *             The pairs already submitted keep running.
+     */
+    public List<Future<Patch<T>>> diff(Collection<? extends Pair<T>> pairs)
+            throws InterruptedException {
+        if (pairs == null) {
+            throw new IllegalArgumentException("pairs must not be null");
+        }
+        final List<Pair<T>> input = new ArrayList<Pair<T>>(pairs);
+        List<Integer> order = new ArrayList<Integer>(input.size());
+        for (int i = 0; i < input.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long sizeA = input.get(a).size();
+                long sizeB = input.get(b).size();
+                return sizeA > sizeB ? -1 : (sizeA < sizeB ? 1 : 0);
+            }
+        });
+
+        List<Future<Patch<T>>> result = new ArrayList<Future<Patch<T>>>(input.size());
+        for (int i = 0; i < input.size(); i++) {
+            result.add(null);
+        }
+        Semaphore slots = new Semaphore(maxInFlight);
+        for (int i : order) {
+            DiffTask task = new DiffTask(input.get(i), slots);
+            result.set(i, task);
+            slots.acquire();
+            try {
+                executor.execute(task);
+            } catch (RuntimeException e) {
+                slots.release();
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The diff of one pair. Frees its slot and its timeout when done.
+     */
+    private final class DiffTask extends FutureTask<Patch<T>> {
+        private final Semaphore slots;
+        private volatile ScheduledFuture<?> timeout;
+
+        DiffTask(final Pair<T> pair, Semaphore slots) {
+            super(new Callable<Patch<T>>() {
+                public Patch<T> call() throws DiffException {
+                    if (pair.size() > maxSize) {
+                        throw new DiffException("pair of " + pair.size()
+                                + " elements exceeds the limit of " + maxSize);
+                    }
+                    return DiffUtils.diff(pair.getOriginal(), pair.getRevised(), algorithm);
+                }
+            });
+            this.slots = slots;
+        }
+
+        @Override
+        public void run() {
+            if (timeoutNanos > 0 && !isDone()) {
+                timeout = watchdog().schedule(new Runnable() {
+                    public void run() {
+                        cancel(true);
+                    }
+                }, timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            ScheduledFuture<?> t = timeout;
+            if (t != null) {
+                t.cancel(false);
+            }
+            slots.release();
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor watchdog() {
+        if (watchdog == null) {
+            watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BatchDiff-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            watchdog.setRemoveOnCancelPolicy(true);
+        }
+        return watchdog;
+    }
+}
@@ -0,0 +1,119 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * One instruction of a {@link BinaryPatch}: the next bytes of the revised
+ * file are either copied from the original file or inserted literally.
+ */
+public class BinaryDelta {
+
+    /**
+     * Specifies the type of the delta.
+     */
+    public enum TYPE {
+        /** A range of the original bytes reappears in the revised file. */
+        COPY,
+        /** The bytes are new in the revised file and carried by the delta. */
+        INSERT
+    }
+
+    private final TYPE type;
+    private final long originalPosition;
+    private final long revisedPosition;
+    private final long size;
+    private final byte[] data;
+
+    private BinaryDelta(TYPE type, long originalPosition, long revisedPosition, long size,
+            byte[] data) {
+        this.type = type;
+        this.originalPosition = originalPosition;
+        this.revisedPosition = revisedPosition;
+        this.size = size;
+        this.data = data;
+    }
+
+    /**
+     * @param originalPosition the position of the copied bytes in the original file.
+     * @param revisedPosition the position of the copied bytes in the revised file.
+     * @param size the number of copied bytes.
+     */
+    static BinaryDelta copy(long originalPosition, long revisedPosition, long size) {
+        return new BinaryDelta(TYPE.COPY, originalPosition, revisedPosition, size, null);
+    }
+
+    /**
+     * @param revisedPosition the position of the inserted bytes in the revised file.
+     * @param data the inserted bytes.
+     */
+    static BinaryDelta insert(long revisedPosition, byte[] data) {
+        return new BinaryDelta(TYPE.INSERT, -1, revisedPosition, data.length, data);
+    }
+
+    /**
+     * @return the type of this delta.
+     */
+    public TYPE getType() {
+        return type;
+    }
+
+    /**
+     * @return the position of the copied bytes in the original file, or
+     *         {@code -1} for an insert.
+     */
+    public long getOriginalPosition() {
+        return originalPosition;
+    }
+
+    /**
+     * @return the position of the bytes of this delta in the revised file.
+     */
+    public long getRevisedPosition() {
+        return revisedPosition;
+    }
+
+    /**
+     * @return the number of bytes copied or inserted.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the inserted bytes, or {@code null} for a copy. The array is
+     *         not copied and must not be modified.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type.hashCode();
+        result = 31 * result + (int) (originalPosition ^ (originalPosition >>> 32));
+        result = 31 * result + (int) (revisedPosition ^ (revisedPosition >>> 32));
+        result = 31 * result + (int) (size ^ (size >>> 32));
+        return 31 * result + Arrays.hashCode(data);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        BinaryDelta other = (BinaryDelta) obj;
+        return type == other.type && originalPosition == other.originalPosition
+                && revisedPosition == other.revisedPosition && size == other.size
+                && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public String toString() {
+        if (type == TYPE.COPY) {
+            return "[CopyDelta, position: " + revisedPosition + ", from: " + originalPosition
+                    + ", size: " + size + "]";
+        }
+        return "[InsertDelta, position: " + revisedPosition + ", size: " + size + "]";
+    }
+}
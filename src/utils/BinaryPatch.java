@@ -0,0 +1,385 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The byte level difference between an original and a revised file, in the
+ * style of rsync and xdelta: a list of {@link BinaryDelta}s which rebuild the
+ * revised file from ranges of the original file and inserted bytes.
+ * <p>
+ * The original file is cut into blocks whose rolling checksums are indexed.
+ * The checksum of a window of the block size is then rolled over the revised
+ * file one byte at a time; where it matches a block and the bytes are equal,
+ * the match is extended in both directions and becomes a copy. Everything
+ * between copies is inserted. Both files are read through memory mappings,
+ * so only the inserted bytes are held on the heap.
+ * </p>
+ * <p>
+ * The patch keeps the size and the CRC32 of the original, and checks both
+ * before anything is written: a copy taken from a different original would
+ * silently corrupt the result.
+ * </p>
+ */
+public class BinaryPatch {
+
+    /** Inserted bytes are split into deltas of at most this size. */
+    private static final int MAX_INSERT_SIZE = 1 << 20;
+
+    /** The number of blocks with the same checksum compared at a position. */
+    private static final int MAX_CANDIDATES = 16;
+
+    /** The bytes read at once when computing a checksum. */
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
+    private final long originalSize;
+    private final long originalChecksum;
+    private final long revisedSize;
+    private final List<BinaryDelta> deltas;
+
+    private BinaryPatch(long originalSize, long originalChecksum, long revisedSize,
+            List<BinaryDelta> deltas) {
+        this.originalSize = originalSize;
+        this.originalChecksum = originalChecksum;
+        this.revisedSize = revisedSize;
+        this.deltas = Collections.unmodifiableList(deltas);
+    }
+
+    /**
+     * @return the size of the original file the patch was computed for.
+     */
+    public long getOriginalSize() {
+        return originalSize;
+    }
+
+    /**
+     * @return the CRC32 of the original file the patch was computed for.
+     */
+    public long getOriginalChecksum() {
+        return originalChecksum;
+    }
+
+    /**
+     * @return the size of the revised file the patch rebuilds.
+     */
+    public long getRevisedSize() {
+        return revisedSize;
+    }
+
+    /**
+     * @return the deltas, in the order of the revised file. The list is
+     *         unmodifiable.
+     */
+    public List<BinaryDelta> getDeltas() {
+        return deltas;
+    }
+
+    /**
+     * Writes the revised file, mapping both files so that neither is loaded
+     * onto the heap. The revised file is created or replaced.
+     *
+     * @param original the original file. Must not be {@code null}.
+     * @param revised the file to write. Must not be {@code null}.
+     * @throws PatchFailedException if the original file does not have the
+     *             size and checksum the patch was computed for. The revised
+     *             file is then left untouched.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public void applyTo(Path original, Path revised) throws PatchFailedException, IOException {
+        if (original == null) {
+            throw new IllegalArgumentException("original must not be null");
+        }
+        if (revised == null) {
+            throw new IllegalArgumentException("revised must not be null");
+        }
+        FileChannel in = FileChannel.open(original, StandardOpenOption.READ);
+        try {
+            checkOriginalSize(in.size());
+            MappedBytes source = MappedBytes.map(in, FileChannel.MapMode.READ_ONLY, originalSize);
+            checkOriginalChecksum(source);
+            FileChannel out = FileChannel.open(revised, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                MappedBytes target = MappedBytes.map(out, FileChannel.MapMode.READ_WRITE, revisedSize);
+                applyTo(source, target);
+                target.force();
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Rebuilds the revised bytes in memory.
+     *
+     * @param original the original bytes. Must not be {@code null}.
+     * @return the revised bytes.
+     * @throws PatchFailedException if the original bytes do not have the size
+     *             and checksum the patch was computed for.
+     */
+    public byte[] applyTo(byte[] original) throws PatchFailedException {
+        if (original == null) {
+            throw new IllegalArgumentException("original must not be null");
+        }
+        checkOriginalSize(original.length);
+        checkOriginalChecksum(MappedBytes.wrap(original));
+        if (revisedSize > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("revised size " + revisedSize + " exceeds an array");
+        }
+        byte[] result = new byte[(int) revisedSize];
+        applyTo(MappedBytes.wrap(original), MappedBytes.wrap(result));
+        return result;
+    }
+
+    private void applyTo(MappedBytes source, MappedBytes target) {
+        for (BinaryDelta delta : deltas) {
+            if (delta.getType() == BinaryDelta.TYPE.COPY) {
+                target.put(delta.getRevisedPosition(), source, delta.getOriginalPosition(),
+                        delta.size());
+            } else {
+                target.put(delta.getRevisedPosition(), delta.getData());
+            }
+        }
+    }
+
+    private void checkOriginalSize(long size) throws PatchFailedException {
+        if (size != originalSize) {
+            throw new PatchFailedException("Incorrect patch: the original has " + size
+                    + " bytes instead of " + originalSize);
+        }
+    }
+
+    private void checkOriginalChecksum(MappedBytes original) throws PatchFailedException {
+        if (checksum(original) != originalChecksum) {
+            throw new PatchFailedException("Incorrect patch: the original does not have the checksum "
+                    + "the patch was computed for");
+        }
+    }
+
+    /**
+     * @return the CRC32 of all the bytes.
+     */
+    private static long checksum(MappedBytes bytes) {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[(int) Math.min(bytes.size(), CHECKSUM_BUFFER_SIZE)];
+        for (long position = 0; position < bytes.size(); position += buffer.length) {
+            int length = (int) Math.min(buffer.length, bytes.size() - position);
+            bytes.get(position, buffer, 0, length);
+            crc.update(buffer, 0, length);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Computes the patch rebuilding {@code revised} from {@code original}.
+     *
+     * @param blockSize the size of the indexed blocks of the original, at
+     *            least 4. Smaller blocks find shorter copies but cost more
+     *            memory and lookups.
+     */
+    static BinaryPatch compute(MappedBytes original, MappedBytes revised, int blockSize) {
+        if (blockSize < 4) {
+            throw new IllegalArgumentException("blockSize must be at least 4");
+        }
+        if (original.size() / blockSize > (1 << 28)) {
+            throw new IllegalArgumentException("blockSize " + blockSize
+                    + " makes too many blocks for " + original.size() + " bytes");
+        }
+        return new Matcher(original, revised, blockSize).match();
+    }
+
+    /**
+     * @return the block size used by default for an original of the given
+     *         size: about its square root, between 512 bytes and 128 KiB.
+     */
+    static int defaultBlockSize(long originalSize) {
+        long size = (long) Math.sqrt((double) originalSize) & ~7L;
+        return (int) Math.max(512, Math.min(size, 128 * 1024));
+    }
+
+    /**
+     * The rolling checksum of rsync: two 16 bit sums of the bytes of a
+     * window, the second one weighting every byte by its distance to the end
+     * of the window, so that sliding the window by one byte is O(1).
+     */
+    private static int checksum(int a, int b) {
+        return (b << 16) | (a & 0xffff);
+    }
+
+    /**
+     * The state of one computation.
+     */
+    private static final class Matcher {
+        private final MappedBytes original;
+        private final MappedBytes revised;
+        private final int blockSize;
+        private final List<BinaryDelta> deltas = new ArrayList<BinaryDelta>();
+
+        /** Open hashing of the block checksums: first block per bucket, next block per block. */
+        private final int[] heads;
+        private final int[] next;
+        private final int[] sums;
+        private final int shift;
+
+        /** The copy not emitted yet, since the next one may continue it. */
+        private long copyOriginal = -1;
+        private long copyRevised;
+        private long copySize;
+
+        Matcher(MappedBytes original, MappedBytes revised, int blockSize) {
+            this.original = original;
+            this.revised = revised;
+            this.blockSize = blockSize;
+            int blocks = (int) (original.size() / blockSize);
+            int capacity = 16;
+            while (capacity < blocks * 2) {
+                capacity <<= 1;
+            }
+            shift = 32 - Integer.numberOfTrailingZeros(capacity);
+            heads = new int[capacity];
+            next = new int[blocks];
+            sums = new int[blocks];
+            Arrays.fill(heads, -1);
+            // link backwards so that every bucket lists its blocks in file order
+            for (int i = blocks - 1; i >= 0; i--) {
+                long start = (long) i * blockSize;
+                int a = 0;
+                int b = 0;
+                for (int k = 0; k < blockSize; k++) {
+                    int x = original.get(start + k) & 0xff;
+                    a += x;
+                    b += (blockSize - k) * x;
+                }
+                sums[i] = checksum(a, b);
+                int bucket = bucket(sums[i]);
+                next[i] = heads[bucket];
+                heads[bucket] = i;
+            }
+        }
+
+        private int bucket(int sum) {
+            return (sum * 0x9E3779B9) >>> shift;
+        }
+
+        BinaryPatch match() {
+            long size = revised.size();
+            long literal = 0;
+            long pos = 0;
+            boolean valid = false;
+            int a = 0;
+            int b = 0;
+            while (next.length > 0 && pos + blockSize <= size) {
+                if (!valid) {
+                    a = 0;
+                    b = 0;
+                    for (int k = 0; k < blockSize; k++) {
+                        int x = revised.get(pos + k) & 0xff;
+                        a += x;
+                        b += (blockSize - k) * x;
+                    }
+                    valid = true;
+                }
+                int sum = checksum(a, b);
+                long found = find(sum, pos);
+                if (found >= 0) {
+                    // extend the match backwards into the pending literal, then forwards
+                    long from = found;
+                    long to = pos;
+                    while (to > literal && from > 0 && original.get(from - 1) == revised.get(to - 1)) {
+                        from--;
+                        to--;
+                    }
+                    long end = pos + blockSize;
+                    long originalEnd = found + blockSize;
+                    while (end < size && originalEnd < original.size()
+                            && original.get(originalEnd) == revised.get(end)) {
+                        end++;
+                        originalEnd++;
+                    }
+                    insert(literal, to);
+                    copy(from, to, end - to);
+                    literal = end;
+                    pos = end;
+                    valid = false;
+                    continue;
+                }
+                if (pos + blockSize == size) {
+                    break;
+                }
+                int out = revised.get(pos) & 0xff;
+                int in = revised.get(pos + blockSize) & 0xff;
+                a += in - out;
+                b += a - blockSize * out;
+                pos++;
+            }
+            insert(literal, size);
+            flushCopy();
+            return new BinaryPatch(original.size(), checksum(original), size, deltas);
+        }
+
+        /**
+         * @return the position of a block of the original equal to the
+         *         window at {@code pos}, or -1.
+         */
+        private long find(int sum, long pos) {
+            int candidates = 0;
+            for (int i = heads[bucket(sum)]; i >= 0 && candidates < MAX_CANDIDATES; i = next[i]) {
+                if (sums[i] != sum) {
+                    continue;
+                }
+                candidates++;
+                long start = (long) i * blockSize;
+                int k = 0;
+                while (k < blockSize && original.get(start + k) == revised.get(pos + k)) {
+                    k++;
+                }
+                if (k == blockSize) {
+                    return start;
+                }
+            }
+            return -1;
+        }
+
+        private void copy(long from, long to, long size) {
+            if (copyOriginal >= 0 && copyOriginal + copySize == from
+                    && copyRevised + copySize == to) {
+                copySize += size;
+                return;
+            }
+            flushCopy();
+            copyOriginal = from;
+            copyRevised = to;
+            copySize = size;
+        }
+
+        private void flushCopy() {
+            if (copyOriginal >= 0) {
+                deltas.add(BinaryDelta.copy(copyOriginal, copyRevised, copySize));
+                copyOriginal = -1;
+            }
+        }
+
+        private void insert(long from, long to) {
+            if (from == to) {
+                return;
+            }
+            flushCopy();
+            while (from < to) {
+                byte[] data = new byte[(int) Math.min(to - from, MAX_INSERT_SIZE)];
+                revised.get(from, data, 0, data.length);
+                deltas.add(BinaryDelta.insert(from, data));
+                from += data.length;
+            }
+        }
+    }
+}
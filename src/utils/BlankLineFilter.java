@@ -0,0 +1,91 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Diffs two texts ignoring their blank lines, for the ignoreBlankLines mode of
+ * {@link DiffRowGenerator}.
+ * <p>
+ * The lines which are not blank are copied into compact lists, along with
+ * their positions in the whole texts, and only these lists are diffed. The
+ * chunks are then mapped back onto the whole texts: a chunk spans from its
+ * first to its last line there, with the blank lines in between, and an
+ * empty chunk goes right after the line preceding it. Blank lines outside the
+ * chunks are never reported as changed.
+ * </p>
+ */
+final class BlankLineFilter {
+
+    private BlankLineFilter() {
+    }
+
+    /**
+     * @param normalizer the normalization of the lines before they are
+     *            compared, or null to compare them as they are
+     */
+    static Patch<String> diff(List<String> original, List<String> revised, LineNormalizer normalizer) {
+        if (!(original instanceof RandomAccess)) {
+            original = new ArrayList<String>(original);
+        }
+        if (!(revised instanceof RandomAccess)) {
+            revised = new ArrayList<String>(revised);
+        }
+        int[] originalPositions = new int[original.size()];
+        int[] revisedPositions = new int[revised.size()];
+        List<String> originalLines = filter(original, originalPositions);
+        List<String> revisedLines = filter(revised, revisedPositions);
+        Patch<String> filtered = normalizer == null ? DiffUtils.diff(originalLines, revisedLines)
+                : DiffUtils.diff(originalLines, revisedLines, normalizer);
+
+        Patch<String> patch = new Patch<String>();
+        patch.setApproximate(filtered.isApproximate());
+        for (Delta<String> delta : filtered.getDeltas()) {
+            patch.addDelta(PatchOperations.newDelta(map(delta.getOriginal(), original, originalPositions),
+                    map(delta.getRevised(), revised, revisedPositions)));
+        }
+        return patch;
+    }
+
+    /**
+     * @param positions filled with the position of every line kept
+     * @return the lines which are not blank
+     */
+    private static List<String> filter(List<String> lines, int[] positions) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (!isBlank(lines.get(i))) {
+                positions[result.size()] = i;
+                result.add(lines.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return whether the line is empty once trimmed, as String.trim does
+     */
+    private static boolean isBlank(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Maps a chunk of the filtered lines onto the whole text.
+     */
+    private static Chunk<String> map(Chunk<String> chunk, List<String> text, int[] positions) {
+        int position = chunk.getPosition();
+        if (chunk.size() == 0) {
+            int at = position == 0 ? 0 : positions[position - 1] + 1;
+            return new Chunk<String>(at, new ArrayList<String>(0));
+        }
+        int from = positions[position];
+        int to = positions[position + chunk.size() - 1] + 1;
+        return new Chunk<String>(from, new ArrayList<String>(text.subList(from, to)));
+    }
+}
@@ -1,5 +1,4 @@
-
-package com.helpers;
+package utils;
 
 import java.util.List;
 
@@ -17,14 +16,8 @@ public class ChangeDelta<T> extends Delta<T> {
         verify(target);
         int position = getOriginal().getPosition();
         int size = getOriginal().size();
-        for (int i = 0; i < size; i++) {
-            target.remove(position);
-        }
-        int i = 0;
-        for (T line : getRevised().getLines()) {
-            target.add(position + i, line);
-            i++;
-        }
+        target.subList(position, position + size).clear();
+        target.addAll(position, getRevised().getLines());
     }
     
 
@@ -32,14 +25,8 @@ public class ChangeDelta<T> extends Delta<T> {
     public void restore(List<T> target) {
         int position = getRevised().getPosition();
         int size = getRevised().size();
-        for (int i = 0; i < size; i++) {
-            target.remove(position);
-        }
-        int i = 0;
-        for (T line : getOriginal().getLines()) {
-            target.add(position + i, line);
-            i++;
-        }
+        target.subList(position, position + size).clear();
+        target.addAll(position, getOriginal().getLines());
     }
     
 
@@ -56,7 +56,7 @@ public class Chunk<T> {
      *            the sequence to verify against.
      */
     public void verify(List<T> target) throws PatchFailedException {
-        if (last() > target.size()) {
+        if (last() >= target.size()) {
             throw new PatchFailedException("Incorrect Chunk: the position of chunk > target size");
         }
         for (int i = 0; i < size(); i++) {
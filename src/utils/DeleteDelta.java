@@ -32,9 +32,7 @@ public class DeleteDelta<T> extends Delta<T> {
         verify(target);
         int position = getOriginal().getPosition();
         int size = getOriginal().size();
-        for (int i = 0; i < size; i++) {
-            target.remove(position);
-        }
+        target.subList(position, position + size).clear();
     }
     
     /**
@@ -43,10 +41,7 @@ public class DeleteDelta<T> extends Delta<T> {
     @Override
     public void restore(List<T> target) {
         int position = this.getRevised().getPosition();
-        List<T> lines = this.getOriginal().getLines();
-        for (int i = 0; i < lines.size(); i++) {
-            target.add(position + i, lines.get(i));
-        }
+        target.addAll(position, this.getOriginal().getLines());
     }
     
     @Override
@@ -1,10 +1,16 @@
 package utils;
 
+import java.util.Arrays;
 
 public class DiffRow {
+    private static final int[] NO_CHANGES = new int[0];
+    
     private Tag tag;
     private String oldLine;
     private String newLine;
+    private int skipped;
+    private int[] oldChanges = NO_CHANGES;
+    private int[] newChanges = NO_CHANGES;
     
     public DiffRow(Tag tag, String oldLine, String newLine) {
         this.tag = tag;
@@ -12,8 +18,36 @@ public class DiffRow {
         this.newLine = newLine;
     }
     
+    /**
+     * Creates a row whose lines are kept as they are, with their changed
+     * parts given as offsets instead of markup.
+     * 
+     * @param oldChanges
+     *            the start and end offsets of the changed parts of the old
+     *            line, one after the other
+     * @param newChanges
+     *            the start and end offsets of the changed parts of the new
+     *            line, one after the other
+     */
+    public DiffRow(Tag tag, String oldLine, String newLine, int[] oldChanges, int[] newChanges) {
+        this(tag, oldLine, newLine);
+        this.oldChanges = oldChanges;
+        this.newChanges = newChanges;
+    }
+    
+    /**
+     * Creates the marker standing for a run of unchanged lines left out.
+     * 
+     * @param skipped
+     *            the number of lines left out
+     */
+    public DiffRow(int skipped) {
+        this(Tag.SKIP, "", "");
+        this.skipped = skipped;
+    }
+    
     public enum Tag {
-        INSERT, DELETE, CHANGE, EQUAL
+        INSERT, DELETE, CHANGE, EQUAL, SKIP
     }
     
     /**
@@ -58,6 +92,32 @@ public class DiffRow {
         this.newLine = newLine;
     }
     
+    /**
+     * @return the number of unchanged lines a {@link Tag#SKIP} row stands for,
+     *         0 for the other rows
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+    
+    /**
+     * @return the start and end offsets of the changed parts of the old line,
+     *         one after the other; empty if they are not known or the line
+     *         carries them as markup
+     */
+    public int[] getOldChanges() {
+        return oldChanges;
+    }
+    
+    /**
+     * @return the start and end offsets of the changed parts of the new line,
+     *         one after the other; empty if they are not known or the line
+     *         carries them as markup
+     */
+    public int[] getNewChanges() {
+        return newChanges;
+    }
+    
     /*
      * (non-Javadoc)
      * 
@@ -70,6 +130,9 @@ public class DiffRow {
         result = prime * result + ((newLine == null) ? 0 : newLine.hashCode());
         result = prime * result + ((oldLine == null) ? 0 : oldLine.hashCode());
         result = prime * result + ((tag == null) ? 0 : tag.hashCode());
+        result = prime * result + skipped;
+        result = prime * result + Arrays.hashCode(oldChanges);
+        result = prime * result + Arrays.hashCode(newChanges);
         return result;
     }
     
@@ -102,10 +165,17 @@ public class DiffRow {
                 return false;
         } else if (!tag.equals(other.tag))
             return false;
+        if (skipped != other.skipped)
+            return false;
+        if (!Arrays.equals(oldChanges, other.oldChanges) || !Arrays.equals(newChanges, other.newChanges))
+            return false;
         return true;
     }
     
     public String toString() {
+        if (tag == Tag.SKIP) {
+            return "[" + this.tag + "," + this.skipped + "]";
+        }
         return "[" + this.tag + "," + this.oldLine + "," + this.newLine + "]";
     }
 }
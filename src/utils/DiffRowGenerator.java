@@ -1,8 +1,8 @@
 package utils;
 
-import difflib.DiffRow.Tag;
-import difflib.myers.Equalizer;
+import utils.DiffRow.Tag;
 
+import java.io.IOException;
 import java.util.*;
 
 
@@ -10,12 +10,27 @@ public class DiffRowGenerator {
     private final boolean showInlineDiffs;
     private final boolean ignoreWhiteSpaces;
     private final boolean ignoreBlankLines;
+    private final boolean rawText;
     private final String InlineOldTag;
     private final String InlineNewTag;
     private final String InlineOldCssClass;
     private final String InlineNewCssClass;
     private final int columnWidth;
-    private final Equalizer<String> equalizer;
+    /** The normalization of the lines before they are compared, or null to compare them as they are. */
+    private final LineNormalizer normalizer;
+    private final InlineDiff inlineDiff;
+
+    /**
+     * The units the inline diffs compare.
+     */
+    public enum Granularity {
+        /** Every character on its own. */
+        CHARACTER,
+        /** Runs of non-whitespace and runs of whitespace. */
+        WORD,
+        /** Identifiers and numbers, runs of whitespace, html entities and single symbols. */
+        TOKEN
+    }
 
     /**
      * This class used for building the DiffRowGenerator.
@@ -26,11 +41,16 @@ public class DiffRowGenerator {
         private boolean showInlineDiffs = false;
         private boolean ignoreWhiteSpaces = false;
         private boolean ignoreBlankLines = false;
+        private boolean ignoreTrailingWhiteSpaces = false;
+        private boolean ignoreCase = false;
+        private LineNormalizer normalizer = null;
+        private boolean rawText = false;
         private String InlineOldTag = "span";
         private String InlineNewTag = "span";
         private String InlineOldCssClass = "editOldInline";
         private String InlineNewCssClass = "editNewInline";
         private int columnWidth = 80;
+        private Granularity inlineGranularity = Granularity.CHARACTER;
 
         /**
          * Show inline diffs in generating diff rows or not.
@@ -53,8 +73,42 @@ public class DiffRowGenerator {
         }
 
         /**
-         * Ignore blank lines in generating diff rows or not.
-         * @param val the value to set. Default: true.
+         * Ignore the white spaces ending the lines in generating diff rows or not.
+         * @param val the value to set. Default: false.
+         * @return builder with configured ignoreTrailingWhiteSpaces parameter
+         */
+        public Builder ignoreTrailingWhiteSpaces(boolean val) {
+            ignoreTrailingWhiteSpaces = val;
+            return this;
+        }
+
+        /**
+         * Ignore case in generating diff rows or not.
+         * @param val the value to set. Default: false.
+         * @return builder with configured ignoreCase parameter
+         */
+        public Builder ignoreCase(boolean val) {
+            ignoreCase = val;
+            return this;
+        }
+
+        /**
+         * Set a normalizer applied to every line before it is compared, ahead of the
+         * ignoreWhiteSpaces, ignoreTrailingWhiteSpaces and ignoreCase options. The rows still
+         * show the lines as they are.
+         * @param normalizer the normalizer to set, or null for none. Default: null.
+         * @return builder with configured normalizer parameter
+         */
+        public Builder normalizer(LineNormalizer normalizer) {
+            this.normalizer = normalizer;
+            return this;
+        }
+
+        /**
+         * Ignore blank lines in generating diff rows or not. The blank lines are left out of both
+         * texts before they are compared, so adding or removing them is not a change; the rows
+         * still show the blank lines of the original text.
+         * @param val the value to set. Default: false.
          * @return builder with configured ignoreBlankLines parameter
          */
         public Builder ignoreBlankLines(boolean val) {
@@ -62,6 +116,19 @@ public class DiffRowGenerator {
             return this;
         }
 
+        /**
+         * Keep the lines of the rows as they are, for a {@link DiffRowRenderer}: no html
+         * escaping, tab expansion, wrapping or inline tags. The inline diffs are given by
+         * {@link DiffRow#getOldChanges()} and {@link DiffRow#getNewChanges()} instead, and a
+         * missing line is null rather than an empty string.
+         * @param val the value to set. Default: false.
+         * @return builder with configured rawText parameter
+         */
+        public Builder rawText(boolean val) {
+            rawText = val;
+            return this;
+        }
+
         /**
          * Set the tag used for displaying changes in the original text.
          * @param tag the tag to set. Without angle brackets. Default: span.
@@ -114,6 +181,19 @@ public class DiffRowGenerator {
             return this;
         }
 
+        /**
+         * Set the units compared by the inline diffs.
+         * @param granularity the granularity to set. Default: CHARACTER.
+         * @return builder with configured inlineGranularity parameter
+         */
+        public Builder inlineGranularity(Granularity granularity) {
+            if (granularity == null) {
+                throw new IllegalArgumentException("granularity must not be null");
+            }
+            inlineGranularity = granularity;
+            return this;
+        }
+
         /**
          * Build the DiffRowGenerator. If some parameters is not set, the default values are used.
          * @return the customized DiffRowGenerator
@@ -127,20 +207,16 @@ public class DiffRowGenerator {
         showInlineDiffs = builder.showInlineDiffs;
         ignoreWhiteSpaces = builder.ignoreWhiteSpaces; //
         ignoreBlankLines = builder.ignoreBlankLines; //
+        rawText = builder.rawText;
         InlineOldTag = builder.InlineOldTag;
         InlineNewTag = builder.InlineNewTag;
         InlineOldCssClass = builder.InlineOldCssClass;
         InlineNewCssClass = builder.InlineNewCssClass;
         columnWidth = builder.columnWidth; //
-        equalizer = new Equalizer<String>() {
-            public boolean equals(String original, String revised) {
-                if (ignoreWhiteSpaces) {
-                    original = original.trim().replaceAll("\\s+", " ");
-                    revised = revised.trim().replaceAll("\\s+", " ");
-                }
-                return original.equals(revised);
-            }
-        };
+        inlineDiff = new InlineDiff(builder.inlineGranularity, InlineOldTag, InlineOldCssClass,
+                InlineNewTag, InlineNewCssClass);
+        normalizer = NormalizerPipeline.compile(ignoreWhiteSpaces, builder.ignoreTrailingWhiteSpaces,
+                builder.ignoreCase, builder.normalizer);
     }
 
     /**
@@ -152,18 +228,21 @@ public class DiffRowGenerator {
      * @return the DiffRows between original and revised texts
      */
     public List<DiffRow> generateDiffRows(List<String> original, List<String> revised) {
-        return generateDiffRows(original, revised, DiffUtils.diff(original, revised, equalizer));
+        return generateDiffRows(original, revised, diff(original, revised));
     }
 
-    private List<String> removeBlankLines(List<String> lines) {
-        List<String> result = new ArrayList<String>();
-        for (String line: lines) {
-            if (line.trim().length() == 0) {
-                result.add("");
-            }
-            result.add(line);
+    /**
+     * Computes the patch between the texts, comparing the lines through the normalizer if any
+     * and leaving the blank lines out if they are ignored.
+     */
+    private Patch<String> diff(List<String> original, List<String> revised) {
+        if (ignoreBlankLines) {
+            return BlankLineFilter.diff(original, revised, normalizer);
         }
-        return result;
+        if (normalizer == null) {
+            return DiffUtils.diff(original, revised);
+        }
+        return DiffUtils.diff(original, revised, normalizer);
     }
 
     /**
@@ -176,80 +255,245 @@ public class DiffRowGenerator {
      * @return the DiffRows between original and revised texts
      */
     public List<DiffRow> generateDiffRows(List<String> original, List<String> revised, Patch<String> patch) {
-        // normalize the lines (expand tabs, escape html entities)
-        original = StringUtills.normalize(original);
-        revised = StringUtills.normalize(revised);
+        List<DiffRow> diffRows = new ArrayList<DiffRow>();
+        Iterator<DiffRow> rows = iterateDiffRows(original, revised, patch);
+        while (rows.hasNext()) {
+            diffRows.add(rows.next());
+        }
+        return diffRows;
+    }
 
-        // wrap to the column width
-        original = StringUtills.wrapText(original, this.columnWidth);
-        revised = StringUtills.wrapText(revised, this.columnWidth);
+    /**
+     * Get the DiffRows describing the difference between original and revised texts one by one.
+     * The rows of the unchanged lines are only created when they are reached, so a long text with
+     * few changes never has all its rows in memory.
+     *
+     * @param original the original text
+     * @param revised the revised text
+     * @return the DiffRows between original and revised texts, in the order of generateDiffRows
+     */
+    public Iterator<DiffRow> iterateDiffRows(List<String> original, List<String> revised) {
+        return iterateDiffRows(original, revised, diff(original, revised));
+    }
 
-        List<DiffRow> diffRows = new ArrayList<DiffRow>();
-        int endPos = 0;
-        final List<Delta<String>> deltaList = patch.getDeltas();
-        for (int i = 0; i < deltaList.size(); i++) {
-            Delta<String> delta = deltaList.get(i);
-            Chunk<String> orig = delta.getOriginal();
-            Chunk<String> rev = delta.getRevised();
-
-            // We should normalize and wrap lines in deltas too.
-            orig.setLines(StringUtills.normalize((List<String>) orig.getLines()));
-            rev.setLines(StringUtills.normalize((List<String>) rev.getLines()));
-
-            orig.setLines(StringUtills.wrapText((List<String>) orig.getLines(), this.columnWidth));
-            rev.setLines(StringUtills.wrapText((List<String>) rev.getLines(), this.columnWidth));
-
-            // catch the equal prefix for each chunk
-            for (String line : original.subList(endPos, orig.getPosition())) {
-                diffRows.add(new DiffRow(Tag.EQUAL, line, line));
+    /**
+     * Get the DiffRows describing the difference between original and revised texts using the
+     * given patch one by one, creating the rows of the unchanged lines only when they are reached.
+     *
+     * @param original the original text
+     * @param revised the revised text
+     * @param patch the given patch
+     * @return the DiffRows between original and revised texts, in the order of generateDiffRows
+     */
+    public Iterator<DiffRow> iterateDiffRows(List<String> original, List<String> revised,
+            Patch<String> patch) {
+        return new RowIterator(original, patch, -1);
+    }
+
+    /**
+     * Get only the changed DiffRows and the given number of unchanged rows around each change,
+     * as in a unified diff. Every longer run of unchanged lines is replaced by one
+     * {@link DiffRow.Tag#SKIP} row holding the number of lines left out.
+     *
+     * @param original the original text
+     * @param revised the revised text
+     * @param patch the given patch
+     * @param contextSize the number of unchanged rows kept before and after each change
+     * @return the DiffRows between original and revised texts, with the skip markers
+     */
+    public Iterator<DiffRow> iterateDiffRows(List<String> original, List<String> revised,
+            Patch<String> patch, int contextSize) {
+        if (contextSize < 0) {
+            throw new IllegalArgumentException("contextSize must not be negative");
+        }
+        return new RowIterator(original, patch, contextSize);
+    }
+
+    /**
+     * Writes the given rows with the given renderer. The rows should come from a generator
+     * built with {@link Builder#rawText(boolean)}, as the renderer does its own escaping.
+     *
+     * @param rows the rows to write
+     * @param renderer the renderer writing them
+     * @param out where to write them
+     * @throws IOException if out throws it
+     */
+    public static void renderDiffRows(Iterator<DiffRow> rows, DiffRowRenderer renderer, Appendable out)
+            throws IOException {
+        renderer.start(out);
+        while (rows.hasNext()) {
+            renderer.render(rows.next(), out);
+        }
+        renderer.end(out);
+    }
+
+    /**
+     * Adds the rows of the given delta, normalizing and wrapping its lines first.
+     */
+    private void addDeltaRows(Delta<String> delta, List<DiffRow> diffRows) {
+        if (rawText) {
+            addRawDeltaRows(delta, diffRows);
+            return;
+        }
+        Chunk<String> orig = delta.getOriginal();
+        Chunk<String> rev = delta.getRevised();
+
+        // We should normalize and wrap lines in deltas too.
+        orig.setLines(StringUtills.normalize((List<String>) orig.getLines()));
+        rev.setLines(StringUtills.normalize((List<String>) rev.getLines()));
+
+        orig.setLines(StringUtills.wrapText((List<String>) orig.getLines(), this.columnWidth));
+        rev.setLines(StringUtills.wrapText((List<String>) rev.getLines(), this.columnWidth));
+
+        // Inserted DiffRow
+        if (delta.getClass().equals(InsertDelta.class)) {
+            for (String line : (List<String>) rev.getLines()) {
+                diffRows.add(new DiffRow(Tag.INSERT, "", line));
             }
+            return;
+        }
 
-            // Inserted DiffRow
-            if (delta.getClass().equals(InsertDelta.class)) {
-                endPos = orig.last() + 1;
-                for (String line : (List<String>) rev.getLines()) {
-                    diffRows.add(new DiffRow(Tag.INSERT, "", line));
-                }
-                continue;
+        // Deleted DiffRow
+        if (delta.getClass().equals(DeleteDelta.class)) {
+            for (String line : (List<String>) orig.getLines()) {
+                diffRows.add(new DiffRow(Tag.DELETE, line, ""));
             }
+            return;
+        }
 
-            // Deleted DiffRow
-            if (delta.getClass().equals(DeleteDelta.class)) {
-                endPos = orig.last() + 1;
-                for (String line : (List<String>) orig.getLines()) {
-                    diffRows.add(new DiffRow(Tag.DELETE, line, ""));
-                }
-                continue;
+        if (showInlineDiffs) {
+            addInlineDiffs(delta);
+        }
+        // the changed size is match
+        if (orig.size() == rev.size()) {
+            for (int j = 0; j < orig.size(); j++) {
+                diffRows.add(new DiffRow(Tag.CHANGE, (String) orig.getLines().get(j),
+                        (String) rev.getLines().get(j)));
+            }
+        } else if (orig.size() > rev.size()) {
+            for (int j = 0; j < orig.size(); j++) {
+                diffRows.add(new DiffRow(Tag.CHANGE, (String) orig.getLines().get(j), rev
+                        .getLines().size() > j ? (String) rev.getLines().get(j) : ""));
             }
+        } else {
+            for (int j = 0; j < rev.size(); j++) {
+                diffRows.add(new DiffRow(Tag.CHANGE, orig.getLines().size() > j ? (String) orig
+                        .getLines().get(j) : "", (String) rev.getLines().get(j)));
+            }
+        }
+    }
 
-            if (showInlineDiffs) {
-                addInlineDiffs(delta);
+    /**
+     * Adds the rows of the given delta with its lines as they are, the inline diffs as offsets.
+     */
+    private void addRawDeltaRows(Delta<String> delta, List<DiffRow> diffRows) {
+        List<String> orig = delta.getOriginal().getLines();
+        List<String> rev = delta.getRevised().getLines();
+        if (delta.getClass().equals(InsertDelta.class)) {
+            for (String line : rev) {
+                diffRows.add(new DiffRow(Tag.INSERT, null, line));
             }
-            // the changed size is match
-            if (orig.size() == rev.size()) {
-                for (int j = 0; j < orig.size(); j++) {
-                    diffRows.add(new DiffRow(Tag.CHANGE, (String) orig.getLines().get(j),
-                            (String) rev.getLines().get(j)));
+            return;
+        }
+        if (delta.getClass().equals(DeleteDelta.class)) {
+            for (String line : orig) {
+                diffRows.add(new DiffRow(Tag.DELETE, line, null));
+            }
+            return;
+        }
+        int[][][] changes = showInlineDiffs ? inlineDiff.lineChanges(delta) : null;
+        int[] none = new int[0];
+        for (int j = 0; j < Math.max(orig.size(), rev.size()); j++) {
+            boolean hasOld = j < orig.size();
+            boolean hasNew = j < rev.size();
+            diffRows.add(new DiffRow(Tag.CHANGE, hasOld ? orig.get(j) : null, hasNew ? rev.get(j) : null,
+                    changes != null && hasOld ? changes[0][j] : none,
+                    changes != null && hasNew ? changes[1][j] : none));
+        }
+    }
+
+    /**
+     * Walks the deltas of a patch, creating the rows of the unchanged lines between them on
+     * demand: an unchanged line is normalized and wrapped only when its row is returned.
+     */
+    private final class RowIterator implements Iterator<DiffRow> {
+        private final List<String> original;
+        private final List<Delta<String>> deltas;
+        /** The unchanged rows kept around each change, or -1 to keep all of them. */
+        private final int contextSize;
+
+        /** The rows of the current delta not returned yet. */
+        private final List<DiffRow> pending = new ArrayList<DiffRow>();
+        private int pendingIndex;
+        private int deltaIndex;
+
+        /** The current run of unchanged lines is original[position, runEnd). */
+        private int position;
+        private int runEnd;
+        /** The part of the current run replaced by a skip row, if not empty. */
+        private int skipFrom;
+        private int skipTo;
+
+        RowIterator(List<String> original, Patch<String> patch, int contextSize) {
+            this.original = original instanceof RandomAccess ? original : new ArrayList<String>(original);
+            this.deltas = patch.getDeltas();
+            this.contextSize = contextSize;
+            startRun();
+        }
+
+        /**
+         * Starts the run of unchanged lines at position, up to the next delta or the end.
+         */
+        private void startRun() {
+            runEnd = deltaIndex < deltas.size() ? deltas.get(deltaIndex).getOriginal().getPosition()
+                    : original.size();
+            skipFrom = runEnd;
+            skipTo = runEnd;
+            if (contextSize >= 0) {
+                int head = deltaIndex > 0 ? contextSize : 0;
+                int tail = deltaIndex < deltas.size() ? contextSize : 0;
+                if (runEnd - position > head + tail) {
+                    skipFrom = position + head;
+                    skipTo = runEnd - tail;
                 }
-            } else if (orig.size() > rev.size()) {
-                for (int j = 0; j < orig.size(); j++) {
-                    diffRows.add(new DiffRow(Tag.CHANGE, (String) orig.getLines().get(j), rev
-                            .getLines().size() > j ? (String) rev.getLines().get(j) : ""));
+            }
+        }
+
+        public boolean hasNext() {
+            return pendingIndex < pending.size() || position < runEnd || deltaIndex < deltas.size();
+        }
+
+        public DiffRow next() {
+            if (pendingIndex < pending.size()) {
+                return pending.get(pendingIndex++);
+            }
+            if (position < runEnd) {
+                if (position == skipFrom) {
+                    position = skipTo;
+                    return new DiffRow(skipTo - skipFrom);
                 }
-            } else {
-                for (int j = 0; j < rev.size(); j++) {
-                    diffRows.add(new DiffRow(Tag.CHANGE, orig.getLines().size() > j ? (String) orig
-                            .getLines().get(j) : "", (String) rev.getLines().get(j)));
+                String line = original.get(position++);
+                if (!rawText) {
+                    line = StringUtills.wrapText(StringUtills.normalize(line), columnWidth);
                 }
+                return new DiffRow(Tag.EQUAL, line, line);
             }
-            endPos = orig.last() + 1;
+            if (deltaIndex == deltas.size()) {
+                throw new NoSuchElementException();
+            }
+            Delta<String> delta = deltas.get(deltaIndex++);
+            pending.clear();
+            pendingIndex = 0;
+            addDeltaRows(delta, pending);
+            position = delta.getOriginal().getPosition() + delta.getOriginal().size();
+            startRun();
+            // the first row of the delta, or what follows it if it has none
+            return next();
         }
 
-        // Copy the final matching chunk if any.
-        for (String line : original.subList(endPos, original.size())) {
-            diffRows.add(new DiffRow(Tag.EQUAL, line, line));
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
-        return diffRows;
     }
 
     /**
@@ -257,47 +501,7 @@ public class DiffRowGenerator {
      * @param delta the given delta
      */
     private void addInlineDiffs(Delta<String> delta) {
-        List<String> orig = (List<String>) delta.getOriginal().getLines();
-        List<String> rev = (List<String>) delta.getRevised().getLines();
-        LinkedList<String> origList = new LinkedList<String>();
-        for (Character character : join(orig, "\n").toCharArray()) {
-            origList.add(character.toString());
-        }
-        LinkedList<String> revList = new LinkedList<String>();
-        for (Character character : join(rev, "\n").toCharArray()) {
-            revList.add(character.toString());
-        }
-        List<Delta<String>> inlineDeltas = DiffUtils.diff(origList, revList).getDeltas();
-        if (inlineDeltas.size() < 3) {
-            Collections.reverse(inlineDeltas);
-            for (Delta<String> inlineDelta : inlineDeltas) {
-                Chunk<String> inlineOrig = inlineDelta.getOriginal();
-                Chunk<String> inlineRev = inlineDelta.getRevised();
-                if (inlineDelta.getClass().equals(DeleteDelta.class)) {
-                    origList = wrapInTag(origList, inlineOrig.getPosition(), inlineOrig
-                            .getPosition()
-                            + inlineOrig.size() + 1, this.InlineOldTag, this.InlineOldCssClass);
-                } else if (inlineDelta.getClass().equals(InsertDelta.class)) {
-                    revList = wrapInTag(revList, inlineRev.getPosition(), inlineRev.getPosition()
-                            + inlineRev.size() + 1, this.InlineNewTag, this.InlineNewCssClass);
-                } else if (inlineDelta.getClass().equals(ChangeDelta.class)) {
-                    origList = wrapInTag(origList, inlineOrig.getPosition(), inlineOrig
-                            .getPosition()
-                            + inlineOrig.size() + 1, this.InlineOldTag, this.InlineOldCssClass);
-                    revList = wrapInTag(revList, inlineRev.getPosition(), inlineRev.getPosition()
-                            + inlineRev.size() + 1, this.InlineNewTag, this.InlineNewCssClass);
-                }
-            }
-            StringBuilder origResult = new StringBuilder(), revResult = new StringBuilder();
-            for (String character : origList) {
-                origResult.append(character);
-            }
-            for (String character : revList) {
-                revResult.append(character);
-            }
-            delta.getOriginal().setLines(Arrays.asList(origResult.toString().split("\n")));
-            delta.getRevised().setLines(Arrays.asList(revResult.toString().split("\n")));
-        }
+        inlineDiff.addInlineDiffs(delta);
     }
 
     /**
@@ -361,23 +565,4 @@ public class DiffRowGenerator {
 
         return startTag + line + endTag;
     }
-
-    /**
-     * The helper method for joining collections
-     * @param <T>
-     * @param objs the collection to join
-     * @param delimiter the delimiter to use
-     * @return the joined string
-     */
-    private static <T> String join(final Iterable<T> objs, final String delimiter) {
-        Iterator<T> iter = objs.iterator();
-        if (!iter.hasNext()) {
-            return "";
-        }
-        StringBuffer buffer = new StringBuffer(String.valueOf(iter.next()));
-        while (iter.hasNext()) {
-            buffer.append(delimiter).append(String.valueOf(iter.next()));
-        }
-        return buffer.toString();
-    }
 }
@@ -0,0 +1,41 @@
+package utils;
+
+import java.io.IOException;
+
+/**
+ * Writes {@link DiffRow}s in some output format. The rows are expected to
+ * hold their lines as they are, as made by a {@link DiffRowGenerator} built
+ * with {@code rawText(true)}: the renderer does its own escaping and marks
+ * the changed parts given by {@link DiffRow#getOldChanges()} and
+ * {@link DiffRow#getNewChanges()}. Nothing is built per row, everything is
+ * appended to the output directly.
+ * 
+ * @see DiffRowGenerator#renderDiffRows(java.util.Iterator, DiffRowRenderer, Appendable)
+ */
+public interface DiffRowRenderer {
+    
+    /**
+     * Writes what comes before the first row.
+     * 
+     * @param out where to write. Must not be {@code null}.
+     * @throws IOException if out throws it
+     */
+    public void start(Appendable out) throws IOException;
+    
+    /**
+     * Writes one row.
+     * 
+     * @param row the row to write. Must not be {@code null}.
+     * @param out where to write. Must not be {@code null}.
+     * @throws IOException if out throws it
+     */
+    public void render(DiffRow row, Appendable out) throws IOException;
+    
+    /**
+     * Writes what comes after the last row.
+     * 
+     * @param out where to write. Must not be {@code null}.
+     * @throws IOException if out throws it
+     */
+    public void end(Appendable out) throws IOException;
+}
@@ -0,0 +1,403 @@
+package utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Keeps the diff of two sequences up to date while they are edited, e.g. a
+ * document in an editor and its saved version.
+ * <p>
+ * The session holds both sequences in gap buffers, with every element
+ * interned to an int id, and the deltas of the current diff as index ranges.
+ * An edit widens the edited range on both ends until it starts and ends in
+ * unchanged elements, at least eight of them where the sequence
+ * allows it, taking in every delta it reaches. Only that window is diffed
+ * again; its new deltas replace the ones it took in, and the deltas after it
+ * are shifted by the growth of the edit. The rest of the diff is left as it
+ * was.
+ * </p>
+ * <p>
+ * An edit costs the Myers search on its window, O(W D) for a window of W
+ * elements with D differences, plus moving the gaps from the previous edit,
+ * which is short while the edits stay close together, plus O(K) for shifting
+ * the positions of the K deltas after the window. The ids of element versions
+ * which were edited away are dropped by re-interning both sides once the
+ * interner holds more than twice as many distinct elements as the sequences;
+ * that O(N) pass comes at most once every N interned elements.
+ * </p>
+ * <p>
+ * The patch always turns the original into the revised text, but as every
+ * window is diffed apart from the rest it may be larger than the one of
+ * {@link DiffUtils#diff(List, List)}; {@link #rediff()} recomputes it as a
+ * whole.
+ * </p>
+ * <pre>
+ * DiffSession&lt;String&gt; session = new DiffSession&lt;String&gt;(saved, buffer);
+ * Patch&lt;String&gt; patch = session.replaceRevised(10, 11, Arrays.asList("edited line"));
+ * </pre>
+ *
+ * @param T The type of the compared elements in the 'lines'.
+ */
+public class DiffSession<T> {
+
+    private static final int ORIGINAL = 0;
+    private static final int REVISED = 1;
+
+    /** The unchanged elements an edit window keeps on each of its ends. */
+    private static final int CONTEXT = 8;
+
+    /** Below this many distinct elements, the interner is never compacted. */
+    private static final int MIN_COMPACT_SIZE = 1024;
+
+    private Interner<T> interner;
+
+    private final GapBuffer<T> original;
+    private final GapBuffer<T> revised;
+
+    /** Per delta: original position, original size, revised position, revised size. */
+    private int[] ranges = new int[64];
+    private int count;
+
+    private Patch<T> patch;
+
+    /**
+     * Starts a session on the given sequences. They are copied, later changes
+     * must go through the replace methods.
+     *
+     * @param original The original text. Must not be {@code null}.
+     * @param revised The revised text. Must not be {@code null}.
+     */
+    public DiffSession(List<T> original, List<T> revised) {
+        if (original == null) {
+            throw new IllegalArgumentException("original must not be null");
+        }
+        if (revised == null) {
+            throw new IllegalArgumentException("revised must not be null");
+        }
+        interner = new Interner<T>(original.size() + revised.size());
+        this.original = new GapBuffer<T>(original, interner);
+        this.revised = new GapBuffer<T>(revised, interner);
+        rediff();
+    }
+
+    /**
+     * @return the original text. The list is an unmodifiable view.
+     */
+    public List<T> getOriginal() {
+        return original;
+    }
+
+    /**
+     * @return the revised text. The list is an unmodifiable view.
+     */
+    public List<T> getRevised() {
+        return revised;
+    }
+
+    /**
+     * @return the current patch from the original to the revised text. It is
+     *         only rebuilt after an edit, from the deltas kept by the session.
+     */
+    public Patch<T> getPatch() {
+        if (patch == null) {
+            patch = new IndexPatch(Arrays.copyOf(ranges, 4 * count), count).toPatch(original, revised);
+        }
+        return patch;
+    }
+
+    /**
+     * Diffs the whole sequences again, dropping the deltas kept from the
+     * previous edits. The patch is then the one of
+     * {@link DiffUtils#diff(List, List)}.
+     *
+     * @return the updated patch.
+     */
+    public Patch<T> rediff() {
+        count = 0;
+        splice(0, 0, diff(0, original.size(), 0, revised.size()));
+        patch = null;
+        return getPatch();
+    }
+
+    /**
+     * Replaces the original elements {@code [from, to)} with the given ones.
+     *
+     * @param from the first replaced element.
+     * @param to the end of the replaced elements, exclusive.
+     * @param lines the new elements. Must not be {@code null}.
+     * @return the updated patch.
+     */
+    public Patch<T> replaceOriginal(int from, int to, List<T> lines) {
+        replace(ORIGINAL, from, to, lines);
+        return getPatch();
+    }
+
+    /**
+     * Replaces the revised elements {@code [from, to)} with the given ones.
+     *
+     * @param from the first replaced element.
+     * @param to the end of the replaced elements, exclusive.
+     * @param lines the new elements. Must not be {@code null}.
+     * @return the updated patch.
+     */
+    public Patch<T> replaceRevised(int from, int to, List<T> lines) {
+        replace(REVISED, from, to, lines);
+        return getPatch();
+    }
+
+    private void replace(int side, int from, int to, List<T> lines) {
+        if (lines == null) {
+            throw new IllegalArgumentException("lines must not be null");
+        }
+        GapBuffer<T> edited = buffer(side);
+        GapBuffer<T> other = buffer(1 - side);
+        if (from < 0 || to < from || to > edited.size()) {
+            throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") of "
+                    + edited.size() + " elements");
+        }
+
+        // widen the window until both of its ends are out of every delta
+        int low = Math.max(0, from - CONTEXT);
+        int first = firstEndingAt(side, low);
+        while (first < count && start(side, first) < low) {
+            low = Math.max(0, start(side, first) - CONTEXT);
+            first = firstEndingAt(side, low);
+        }
+        int high = Math.min(edited.size(), to + CONTEXT);
+        int last = firstStartingAfter(side, high);
+        while (last > first && end(side, last - 1) > high) {
+            high = Math.min(edited.size(), end(side, last - 1) + CONTEXT);
+            last = firstStartingAfter(side, high);
+        }
+        // outside of the deltas, both sides are aligned
+        int otherLow = first == 0 ? low : low - end(side, first - 1) + end(1 - side, first - 1);
+        int otherHigh = last == count ? other.size() - (edited.size() - high)
+                : start(1 - side, last) - (start(side, last) - high);
+
+        int growth = lines.size() - (to - from);
+        edited.replace(from, to, lines, interner);
+        if (interner.size() > MIN_COMPACT_SIZE
+                && interner.size() > 2 * (original.size() + revised.size())) {
+            // most ids are of element versions edited away
+            interner = new Interner<T>(original.size() + revised.size());
+            original.intern(interner);
+            revised.intern(interner);
+        }
+
+        for (int d = last; d < count; d++) {
+            ranges[4 * d + 2 * side] += growth;
+        }
+        IndexPatch window = side == ORIGINAL ? diff(low, high + growth, otherLow, otherHigh)
+                : diff(otherLow, otherHigh, low, high + growth);
+        splice(first, last, window);
+        patch = null;
+    }
+
+    private GapBuffer<T> buffer(int side) {
+        return side == ORIGINAL ? original : revised;
+    }
+
+    private int start(int side, int d) {
+        return ranges[4 * d + 2 * side];
+    }
+
+    private int end(int side, int d) {
+        return ranges[4 * d + 2 * side] + ranges[4 * d + 2 * side + 1];
+    }
+
+    /**
+     * @return the first delta whose range on the given side ends at or after
+     *         {@code position}, or {@link #count}.
+     */
+    private int firstEndingAt(int side, int position) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (end(side, mid) < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the first delta whose range on the given side starts after
+     *         {@code position}, or {@link #count}.
+     */
+    private int firstStartingAfter(int side, int position) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (start(side, mid) <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Diffs the ids of the original elements {@code [originalFrom, originalTo)}
+     * against the revised elements {@code [revisedFrom, revisedTo)}.
+     */
+    private IndexPatch diff(int originalFrom, int originalTo, int revisedFrom, int revisedTo) {
+        // skip the common prefix and suffix first, as DiffUtils.diff does
+        while (originalFrom < originalTo && revisedFrom < revisedTo
+                && original.id(originalFrom) == revised.id(revisedFrom)) {
+            originalFrom++;
+            revisedFrom++;
+        }
+        while (originalTo > originalFrom && revisedTo > revisedFrom
+                && original.id(originalTo - 1) == revised.id(revisedTo - 1)) {
+            originalTo--;
+            revisedTo--;
+        }
+        int[] a = original.ids(originalFrom, originalTo);
+        int[] b = revised.ids(revisedFrom, revisedTo);
+        EditScript script = new EditScript(a.length, b.length);
+        new MyersDiff.IntComparison(a, b).compare(script);
+        return script.toIndexPatch(originalFrom, revisedFrom);
+    }
+
+    /**
+     * Replaces the deltas {@code [first, last)} with the ones of the window.
+     */
+    private void splice(int first, int last, IndexPatch window) {
+        int added = window.size();
+        int newCount = count - (last - first) + added;
+        if (4 * newCount > ranges.length) {
+            ranges = Arrays.copyOf(ranges, Math.max(4 * newCount, ranges.length * 3 / 2));
+        }
+        System.arraycopy(ranges, 4 * last, ranges, 4 * (first + added), 4 * (count - last));
+        for (int k = 0; k < added; k++) {
+            int d = 4 * (first + k);
+            ranges[d] = window.getOriginalPosition(k);
+            ranges[d + 1] = window.getOriginalSize(k);
+            ranges[d + 2] = window.getRevisedPosition(k);
+            ranges[d + 3] = window.getRevisedSize(k);
+        }
+        count = newCount;
+    }
+
+    /**
+     * The elements of one side and their ids, with a gap at the last edit so
+     * that the next edit nearby only moves the elements in between.
+     */
+    private static final class GapBuffer<T> extends AbstractList<T> implements RandomAccess {
+        private Object[] elements;
+        private int[] ids;
+        private int gapStart;
+        private int gapEnd;
+
+        GapBuffer(List<T> lines, Interner<T> interner) {
+            int size = lines.size();
+            elements = lines.toArray(new Object[size + 16]);
+            ids = new int[elements.length];
+            gapStart = size;
+            gapEnd = elements.length;
+            intern(interner);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return (T) elements[index < gapStart ? index : index + gapEnd - gapStart];
+        }
+
+        @Override
+        public int size() {
+            return elements.length - (gapEnd - gapStart);
+        }
+
+        int id(int index) {
+            return ids[index < gapStart ? index : index + gapEnd - gapStart];
+        }
+
+        /**
+         * @return the ids of the elements {@code [from, to)}.
+         */
+        int[] ids(int from, int to) {
+            int[] result = new int[to - from];
+            int head = Math.max(Math.min(gapStart, to) - from, 0);
+            System.arraycopy(ids, from, result, 0, head);
+            System.arraycopy(ids, from + head + gapEnd - gapStart, result, head, result.length - head);
+            return result;
+        }
+
+        /**
+         * Replaces the elements {@code [from, to)} with the given ones,
+         * interning them.
+         */
+        void replace(int from, int to, List<T> lines, Interner<T> interner) {
+            moveGap(from);
+            Arrays.fill(elements, gapEnd, gapEnd + to - from, null);
+            gapEnd += to - from;
+            if (gapEnd - gapStart < lines.size()) {
+                grow(lines.size());
+            }
+            for (T line : lines) {
+                elements[gapStart] = line;
+                ids[gapStart++] = interner.intern(line);
+            }
+            modCount++;
+        }
+
+        /**
+         * Interns all elements again, into the given interner.
+         */
+        @SuppressWarnings("unchecked")
+        void intern(Interner<T> interner) {
+            for (int i = 0; i < gapStart; i++) {
+                ids[i] = interner.intern((T) elements[i]);
+            }
+            for (int i = gapEnd; i < elements.length; i++) {
+                ids[i] = interner.intern((T) elements[i]);
+            }
+        }
+
+        private void moveGap(int position) {
+            int gap = gapEnd - gapStart;
+            if (position < gapStart) {
+                int length = gapStart - position;
+                System.arraycopy(elements, position, elements, gapEnd - length, length);
+                System.arraycopy(ids, position, ids, gapEnd - length, length);
+                Arrays.fill(elements, position, Math.min(gapStart, position + gap), null);
+            } else if (position > gapStart) {
+                int length = position - gapStart;
+                System.arraycopy(elements, gapEnd, elements, gapStart, length);
+                System.arraycopy(ids, gapEnd, ids, gapStart, length);
+                Arrays.fill(elements, Math.max(gapEnd, position), position + gap, null);
+            }
+            gapStart = position;
+            gapEnd = position + gap;
+        }
+
+        /**
+         * Widens the gap to at least {@code needed} free entries.
+         */
+        private void grow(int needed) {
+            int size = size();
+            int capacity = Math.max(size + needed, elements.length * 3 / 2 + 16);
+            int tail = elements.length - gapEnd;
+            Object[] newElements = new Object[capacity];
+            int[] newIds = new int[capacity];
+            System.arraycopy(elements, 0, newElements, 0, gapStart);
+            System.arraycopy(ids, 0, newIds, 0, gapStart);
+            System.arraycopy(elements, gapEnd, newElements, capacity - tail, tail);
+            System.arraycopy(ids, gapEnd, newIds, capacity - tail, tail);
+            elements = newElements;
+            ids = newIds;
+            gapEnd = capacity - tail;
+        }
+    }
+}
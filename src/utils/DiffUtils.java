@@ -1,24 +1,118 @@
 package utils;
 
-import difflib.myers.Equalizer;
-import difflib.myers.MyersDiff;
-
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 
 public class DiffUtils {
 
-	private static Pattern unifiedDiffChunkRe = Pattern
-			.compile("^@@\\s+-(?:(\\d+)(?:,(\\d+))?)\\s+\\+(?:(\\d+)(?:,(\\d+))?)\\s+@@$");
-
+	/**
+	 * The diff algorithms shipped with this library.
+	 */
+	public enum Algorithm {
+		/** The linear space Myers algorithm, see {@link MyersDiff}. */
+		MYERS {
+			public <T> DiffAlgorithm<T> create() {
+				return new MyersDiff<T>();
+			}
+		},
+		/** The histogram (patience style) algorithm, see {@link HistogramDiff}. */
+		HISTOGRAM {
+			public <T> DiffAlgorithm<T> create() {
+				return new HistogramDiff<T>();
+			}
+		};
+
+		/**
+		 * Creates a new instance of this algorithm.
+		 * 
+		 * @return the algorithm. Never {@code null}.
+		 */
+		public abstract <T> DiffAlgorithm<T> create();
+	}
 
 	public static <T> Patch<T> diff(List<T> original, List<T> revised) {
 		return DiffUtils.diff(original, revised, new MyersDiff<T>());
 	}
 
+	/**
+	 * Computes the difference between the original and revised list of elements
+	 * with the given kind of diff algorithm
+	 * 
+	 * @param original
+	 *            The original text. Must not be {@code null}.
+	 * @param revised
+	 *            The revised text. Must not be {@code null}.
+	 * @param algorithm
+	 *            The kind of diff algorithm. Must not be {@code null}.
+	 * @return The patch describing the difference between the original and
+	 *         revised sequences. Never {@code null}.
+	 */
+	public static <T> Patch<T> diff(List<T> original, List<T> revised,
+			Algorithm algorithm) {
+		if (algorithm == null) {
+			throw new IllegalArgumentException("algorithm must not be null");
+		}
+		return DiffUtils.diff(original, revised, algorithm.<T> create());
+	}
+
+	/**
+	 * Computes the difference between the original and revised lines as seen
+	 * through the given normalizer: two lines are the same when their
+	 * normalized forms are equal. Every line is normalized once, then the
+	 * normalized forms are compared by their interned ids; the patch holds the
+	 * lines as they are.
+	 * 
+	 * @param original
+	 *            The original text. Must not be {@code null}.
+	 * @param revised
+	 *            The revised text. Must not be {@code null}.
+	 * @param normalizer
+	 *            The normalizer. Must not be {@code null}.
+	 * @return The patch describing the difference between the original and
+	 *         revised sequences. Never {@code null}.
+	 */
+	public static Patch<String> diff(List<String> original, List<String> revised,
+			LineNormalizer normalizer) {
+		if (original == null) {
+			throw new IllegalArgumentException("original must not be null");
+		}
+		if (revised == null) {
+			throw new IllegalArgumentException("revised must not be null");
+		}
+		if (normalizer == null) {
+			throw new IllegalArgumentException("normalizer must not be null");
+		}
+		if (!(original instanceof RandomAccess)) {
+			original = new ArrayList<String>(original);
+		}
+		if (!(revised instanceof RandomAccess)) {
+			revised = new ArrayList<String>(revised);
+		}
+		return diffInterned(original, revised, normalize(original, normalizer),
+				normalize(revised, normalizer), new MyersDiff<String>());
+	}
+
+	private static List<String> normalize(List<String> lines, LineNormalizer normalizer) {
+		List<String> keys = new ArrayList<String>(lines.size());
+		for (String line : lines) {
+			keys.add(normalizer.normalize(line));
+		}
+		return keys;
+	}
+
 	public static <T> Patch<T> diff(List<T> original, List<T> revised,
 			Equalizer<T> equalizer) {
 		if (equalizer != null) {
@@ -52,9 +146,373 @@ public class DiffUtils {
 		if (algorithm == null) {
 			throw new IllegalArgumentException("algorithm must not be null");
 		}
+		if (algorithm instanceof IntDiffAlgorithm
+				&& ((IntDiffAlgorithm) algorithm).usesEquals()) {
+			return diffInterned(original, revised, (IntDiffAlgorithm) algorithm);
+		}
 		return algorithm.diff(original, revised);
 	}
 
+	/**
+	 * Computes the difference between two arrays of token ids with the Myers
+	 * algorithm, without boxing the elements.
+	 * 
+	 * @param original
+	 *            The original sequence. Must not be {@code null}.
+	 * @param revised
+	 *            The revised sequence. Must not be {@code null}.
+	 * @return The deltas between the original and revised sequences, as index
+	 *         ranges. Never {@code null}.
+	 */
+	public static IndexPatch diff(int[] original, int[] revised) {
+		if (original == null) {
+			throw new IllegalArgumentException("original must not be null");
+		}
+		if (revised == null) {
+			throw new IllegalArgumentException("revised must not be null");
+		}
+		return PrimitiveDiff.diff(original, revised);
+	}
+
+	/**
+	 * Computes the difference between two arrays of hashes or other long keys with the Myers
+	 * algorithm, without boxing the elements.
+	 * 
+	 * @param original
+	 *            The original sequence. Must not be {@code null}.
+	 * @param revised
+	 *            The revised sequence. Must not be {@code null}.
+	 * @return The deltas between the original and revised sequences, as index
+	 *         ranges. Never {@code null}.
+	 */
+	public static IndexPatch diff(long[] original, long[] revised) {
+		if (original == null) {
+			throw new IllegalArgumentException("original must not be null");
+		}
+		if (revised == null) {
+			throw new IllegalArgumentException("revised must not be null");
+		}
+		return PrimitiveDiff.diff(original, revised);
+	}
+
+	/**
+	 * Computes the difference between two arrays of characters with the Myers
+	 * algorithm, without boxing the elements.
+	 * 
+	 * @param original
+	 *            The original sequence. Must not be {@code null}.
+	 * @param revised
+	 *            The revised sequence. Must not be {@code null}.
+	 * @return The deltas between the original and revised sequences, as index
+	 *         ranges. Never {@code null}.
+	 */
+	public static IndexPatch diff(char[] original, char[] revised) {
+		if (original == null) {
+			throw new IllegalArgumentException("original must not be null");
+		}
+		if (revised == null) {
+			throw new IllegalArgumentException("revised must not be null");
+		}
+		return PrimitiveDiff.diff(original, revised);
+	}
+
+	/**
+	 * Computes the difference between two arrays of bytes with the Myers
+	 * algorithm, without boxing the elements.
+	 * 
+	 * @param original
+	 *            The original sequence. Must not be {@code null}.
+	 * @param revised
+	 *            The revised sequence. Must not be {@code null}.
+	 * @return The deltas between the original and revised sequences, as index
+	 *         ranges. Never {@code null}.
+	 */
+	public static IndexPatch diff(byte[] original, byte[] revised) {
+		if (original == null) {
+			throw new IllegalArgumentException("original must not be null");
+		}
+		if (revised == null) {
+			throw new IllegalArgumentException("revised must not be null");
+		}
+		return PrimitiveDiff.diff(original, revised);
+	}
+
+	/**
+	 * Computes the byte level difference between two files, with a block size
+	 * of about the square root of the original size. Both files are memory
+	 * mapped instead of being read onto the heap.
+	 * 
+	 * @param original
+	 *            The original file. Must not be {@code null}.
+	 * @param revised
+	 *            The revised file. Must not be {@code null}.
+	 * @return The patch rebuilding the revised file from the original one.
+	 *         Never {@code null}.
+	 * @throws IOException
+	 *             if a file cannot be read.
+	 */
+	public static BinaryPatch diffBinary(Path original, Path revised) throws IOException {
+		return diffBinary(original, revised, 0);
+	}
+
+	/**
+	 * Computes the byte level difference between two files. Both files are
+	 * memory mapped instead of being read onto the heap.
+	 * 
+	 * @param original
+	 *            The original file. Must not be {@code null}.
+	 * @param revised
+	 *            The revised file. Must not be {@code null}.
+	 * @param blockSize
+	 *            The size of the blocks of the original file looked for in the
+	 *            revised one, at least 4, or 0 for the default.
+	 * @return The patch rebuilding the revised file from the original one.
+	 *         Never {@code null}.
+	 * @throws IOException
+	 *             if a file cannot be read.
+	 */
+	public static BinaryPatch diffBinary(Path original, Path revised, int blockSize)
+			throws IOException {
+		if (original == null) {
+			throw new IllegalArgumentException("original must not be null");
+		}
+		if (revised == null) {
+			throw new IllegalArgumentException("revised must not be null");
+		}
+		FileChannel in = FileChannel.open(original, StandardOpenOption.READ);
+		try {
+			FileChannel out = FileChannel.open(revised, StandardOpenOption.READ);
+			try {
+				MappedBytes a = MappedBytes.map(in, FileChannel.MapMode.READ_ONLY, in.size());
+				MappedBytes b = MappedBytes.map(out, FileChannel.MapMode.READ_ONLY, out.size());
+				return BinaryPatch.compute(a, b,
+						blockSize == 0 ? BinaryPatch.defaultBlockSize(a.size()) : blockSize);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Computes the byte level difference between two byte arrays.
+	 * 
+	 * @param original
+	 *            The original bytes. Must not be {@code null}.
+	 * @param revised
+	 *            The revised bytes. Must not be {@code null}.
+	 * @param blockSize
+	 *            The size of the blocks of the original bytes looked for in
+	 *            the revised ones, at least 4, or 0 for the default.
+	 * @return The patch rebuilding the revised bytes from the original ones.
+	 *         Never {@code null}.
+	 */
+	public static BinaryPatch diffBinary(byte[] original, byte[] revised, int blockSize) {
+		if (original == null) {
+			throw new IllegalArgumentException("original must not be null");
+		}
+		if (revised == null) {
+			throw new IllegalArgumentException("revised must not be null");
+		}
+		return BinaryPatch.compute(MappedBytes.wrap(original), MappedBytes.wrap(revised),
+				blockSize == 0 ? BinaryPatch.defaultBlockSize(original.length) : blockSize);
+	}
+
+	/**
+	 * Computes the difference between the lines of two text files with the
+	 * Myers algorithm, see {@link #diff(Path, Path, Charset, Algorithm)}.
+	 */
+	public static Patch<String> diff(Path original, Path revised, Charset charset)
+			throws IOException {
+		return diff(original, revised, charset, Algorithm.MYERS);
+	}
+
+	/**
+	 * Computes the difference between the lines of two text files without
+	 * reading them onto the heap. The files are memory mapped and only the
+	 * start offsets of their lines are indexed; lines are compared and hashed
+	 * on the mapped bytes, and only the lines which end up in a delta are
+	 * decoded into Strings.
+	 * 
+	 * @param original
+	 *            The original file. Must not be {@code null}.
+	 * @param revised
+	 *            The revised file. Must not be {@code null}.
+	 * @param charset
+	 *            The encoding of both files, which must encode {@code '\n'}
+	 *            and {@code '\r'} as single bytes, e.g. UTF-8. Must not be
+	 *            {@code null}.
+	 * @param algorithm
+	 *            The diff algorithm. Must not be {@code null}.
+	 * @return The patch describing the difference between the original and
+	 *         revised lines. Never {@code null}.
+	 * @throws IOException
+	 *             if a file cannot be read.
+	 */
+	public static Patch<String> diff(Path original, Path revised, Charset charset,
+			Algorithm algorithm) throws IOException {
+		if (original == null) {
+			throw new IllegalArgumentException("original must not be null");
+		}
+		if (revised == null) {
+			throw new IllegalArgumentException("revised must not be null");
+		}
+		if (charset == null) {
+			throw new IllegalArgumentException("charset must not be null");
+		}
+		if (algorithm == null) {
+			throw new IllegalArgumentException("algorithm must not be null");
+		}
+		MappedLines a = MappedLines.map(original, charset);
+		MappedLines b = MappedLines.map(revised, charset);
+		int n = a.size();
+		int m = b.size();
+		int prefix = 0;
+		while (prefix < n && prefix < m && a.lineEquals(prefix, b, prefix)) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < n - prefix && suffix < m - prefix
+				&& a.lineEquals(n - 1 - suffix, b, m - 1 - suffix)) {
+			suffix++;
+		}
+
+		EditScript script = new EditScript(n - prefix - suffix, m - prefix - suffix);
+		if (prefix + suffix < n && prefix + suffix < m) {
+			int[][] ids = MappedLines.intern(a, b, prefix, n - suffix, m - suffix);
+			IntDiffAlgorithm diff = (IntDiffAlgorithm) algorithm.<String> create();
+			diff.diff(ids[0], ids[1], script);
+		} else {
+			Arrays.fill(script.originalChanged, true);
+			Arrays.fill(script.revisedChanged, true);
+		}
+		// the chunks copy the lines they cover out of the mapped files
+		return script.toPatch(a, b, prefix, prefix);
+	}
+
+	/**
+	 * Computes the differences of many pairs of lists concurrently on the
+	 * given executor, largest pairs first, with the default settings of
+	 * {@link BatchDiff.Builder}. Use {@link BatchDiff} directly to limit the
+	 * size of the pairs or the time spent on each of them.
+	 * 
+	 * @param pairs
+	 *            The pairs to compare. Must not be {@code null}.
+	 * @param executor
+	 *            The executor computing the diffs. Must not be {@code null}.
+	 * @return The future patch of every pair, in the order of the pairs.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting to submit a pair.
+	 */
+	public static <T> List<Future<Patch<T>>> diffAll(
+			Collection<? extends BatchDiff.Pair<T>> pairs, Executor executor)
+			throws InterruptedException {
+		return new BatchDiff.Builder<T>().executor(executor).build().diff(pairs);
+	}
+
+	/**
+	 * Merges two revisions of a common base text with the Myers algorithm,
+	 * diffing the base against their side on the common ForkJoinPool.
+	 * 
+	 * @see #merge(List, List, List, Algorithm, Executor)
+	 */
+	public static <T> MergeResult<T> merge(List<T> base, List<T> ours, List<T> theirs) {
+		return merge(base, ours, theirs, Algorithm.MYERS, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Merges two revisions of a common base text. The base is diffed against
+	 * both sides in parallel; the changes of one side only are taken over,
+	 * the same changes made by both sides too, and overlapping or adjacent
+	 * different changes become conflicts.
+	 * 
+	 * @param base
+	 *            The common base text. Must not be {@code null}.
+	 * @param ours
+	 *            Our revision of the base. Must not be {@code null}.
+	 * @param theirs
+	 *            Their revision of the base. Must not be {@code null}.
+	 * @param algorithm
+	 *            The diff algorithm. Must not be {@code null}.
+	 * @param executor
+	 *            The executor diffing their side. Must not be {@code null}.
+	 * @return The merge result. Never {@code null}.
+	 */
+	public static <T> MergeResult<T> merge(List<T> base, List<T> ours, List<T> theirs,
+			Algorithm algorithm, Executor executor) {
+		if (base == null) {
+			throw new IllegalArgumentException("base must not be null");
+		}
+		if (ours == null) {
+			throw new IllegalArgumentException("ours must not be null");
+		}
+		if (theirs == null) {
+			throw new IllegalArgumentException("theirs must not be null");
+		}
+		if (algorithm == null) {
+			throw new IllegalArgumentException("algorithm must not be null");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("executor must not be null");
+		}
+		return ThreeWayMerge.merge(base, ours, theirs, algorithm, executor);
+	}
+
+	/**
+	 * Runs the given algorithm on interned ids. The common prefix and suffix
+	 * of the two lists are skipped first, then every distinct element of the
+	 * remaining middle parts is mapped to an int, so that the algorithm
+	 * compares ints instead of calling equals. The chunk positions of the
+	 * resulting patch are relative to the whole lists.
+	 */
+	static <T> Patch<T> diffInterned(List<T> original, List<T> revised,
+			IntDiffAlgorithm algorithm) {
+		if (!(original instanceof RandomAccess)) {
+			original = new ArrayList<T>(original);
+		}
+		if (!(revised instanceof RandomAccess)) {
+			revised = new ArrayList<T>(revised);
+		}
+		return diffInterned(original, revised, original, revised, algorithm);
+	}
+
+	/**
+	 * Runs the given algorithm on the interned ids of the keys of the elements
+	 * instead of the elements themselves: two elements are the same when
+	 * their keys are equal. The chunks of the resulting patch hold the
+	 * elements. All the lists must be RandomAccess, and every key list as long
+	 * as its element list.
+	 */
+	static <T, K> Patch<T> diffInterned(List<T> original, List<T> revised,
+			List<K> originalKeys, List<K> revisedKeys, IntDiffAlgorithm algorithm) {
+		int n = original.size();
+		int m = revised.size();
+		int prefix = 0;
+		while (prefix < n && prefix < m
+				&& originalKeys.get(prefix).equals(revisedKeys.get(prefix))) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < n - prefix && suffix < m - prefix
+				&& originalKeys.get(n - 1 - suffix).equals(revisedKeys.get(m - 1 - suffix))) {
+			suffix++;
+		}
+
+		EditScript script = new EditScript(n - prefix - suffix, m - prefix - suffix);
+		if (prefix + suffix < n && prefix + suffix < m) {
+			Interner<K> interner = new Interner<K>(n + m - 2 * (prefix + suffix));
+			int[] a = interner.intern(originalKeys, prefix, n - suffix);
+			int[] b = interner.intern(revisedKeys, prefix, m - suffix);
+			algorithm.diff(a, b, script);
+		} else {
+			// one side is entirely common, whatever is left on the other one changed
+			Arrays.fill(script.originalChanged, true);
+			Arrays.fill(script.revisedChanged, true);
+		}
+		return script.toPatch(original, revised, prefix, prefix);
+	}
+
 	/**
 	 * Patch the original text with given patch
 	 * 
@@ -93,89 +551,57 @@ public class DiffUtils {
 	 * @return the patch with deltas.
 	 */
 	public static Patch<String> parseUnifiedDiff(List<String> diff) {
-		boolean inPrelude = true;
-		List<String[]> rawChunk = new ArrayList<String[]>();
+		UnifiedDiffParser parser = new UnifiedDiffParser();
 		Patch<String> patch = new Patch<String>();
-
-		int old_ln = 0, new_ln = 0;
-		String tag;
-		String rest;
 		for (String line : diff) {
-			// Skip leading lines until after we've seen one starting with '+++'
-			if (inPrelude) {
-				if (line.startsWith("+++")) {
-					inPrelude = false;
-				}
-				continue;
-			}
-			Matcher m = unifiedDiffChunkRe.matcher(line);
-			if (m.find()) {
-				// Process the lines in the previous chunk
-				if (rawChunk.size() != 0) {
-					List<String> oldChunkLines = new ArrayList<String>();
-					List<String> newChunkLines = new ArrayList<String>();
-
-					for (String[] raw_line : rawChunk) {
-						tag = raw_line[0];
-						rest = raw_line[1];
-						if (tag.equals(" ") || tag.equals("-")) {
-							oldChunkLines.add(rest);
-						}
-						if (tag.equals(" ") || tag.equals("+")) {
-							newChunkLines.add(rest);
-						}
-					}
-					patch.addDelta(new ChangeDelta<String>(new Chunk<String>(
-							old_ln - 1, oldChunkLines), new Chunk<String>(
-							new_ln - 1, newChunkLines)));
-					rawChunk.clear();
-				}
-				// Parse the @@ header
-				old_ln = m.group(1) == null ? 1 : Integer.parseInt(m.group(1));
-				new_ln = m.group(3) == null ? 1 : Integer.parseInt(m.group(3));
-
-				if (old_ln == 0) {
-					old_ln += 1;
-				}
-				if (new_ln == 0) {
-					new_ln += 1;
-				}
-			} else {
-				if (line.length() > 0) {
-					tag = line.substring(0, 1);
-					rest = line.substring(1);
-					if (tag.equals(" ") || tag.equals("+") || tag.equals("-")) {
-						rawChunk.add(new String[] { tag, rest });
-					}
-				} else {
-					rawChunk.add(new String[] { " ", "" });
-				}
+			Delta<String> delta = parser.parseLine(line);
+			if (delta != null) {
+				patch.addDelta(delta);
 			}
 		}
+		Delta<String> delta = parser.finish();
+		if (delta != null) {
+			patch.addDelta(delta);
+		}
+		return patch;
+	}
 
-		// Process the lines in the last chunk
-		if (rawChunk.size() != 0) {
-			List<String> oldChunkLines = new ArrayList<String>();
-			List<String> newChunkLines = new ArrayList<String>();
-
-			for (String[] raw_line : rawChunk) {
-				tag = raw_line[0];
-				rest = raw_line[1];
-				if (tag.equals(" ") || tag.equals("-")) {
-					oldChunkLines.add(rest);
-				}
-				if (tag.equals(" ") || tag.equals("+")) {
-					newChunkLines.add(rest);
-				}
-			}
+	/**
+	 * Parse the given text in unified format, covering any number of files,
+	 * and creates one patch per file. The files are parsed in parallel on the
+	 * common {@link ForkJoinPool}.
+	 * 
+	 * @param diff
+	 *            the text in unified format
+	 * @return the patch of every file, keyed by file name in the order of the
+	 *         diff. The name is taken from the {@code +++} line, or from the
+	 *         {@code ---} line for deleted files.
+	 */
+	public static Map<String, Patch<String>> parseUnifiedDiffFiles(List<String> diff) {
+		return parseUnifiedDiffFiles(diff, ForkJoinPool.commonPool());
+	}
 
-			patch.addDelta(new ChangeDelta<String>(new Chunk<String>(
-					old_ln - 1, oldChunkLines), new Chunk<String>(new_ln - 1,
-					newChunkLines)));
-			rawChunk.clear();
+	/**
+	 * Parse the given text in unified format, covering any number of files,
+	 * and creates one patch per file.
+	 * 
+	 * @param diff
+	 *            the text in unified format
+	 * @param pool
+	 *            the pool parsing the files. Must not be {@code null}.
+	 * @return the patch of every file, keyed by file name in the order of the
+	 *         diff. The name is taken from the {@code +++} line, or from the
+	 *         {@code ---} line for deleted files.
+	 */
+	public static Map<String, Patch<String>> parseUnifiedDiffFiles(List<String> diff,
+			ForkJoinPool pool) {
+		if (diff == null) {
+			throw new IllegalArgumentException("diff must not be null");
 		}
-
-		return patch;
+		if (pool == null) {
+			throw new IllegalArgumentException("pool must not be null");
+		}
+		return UnifiedDiffFiles.parse(diff, pool);
 	}
 
 	/**
@@ -200,177 +626,38 @@ public class DiffUtils {
 	public static List<String> generateUnifiedDiff(String original,
 			String revised, List<String> originalLines, Patch<String> patch,
 			int contextSize) {
-		if (!patch.getDeltas().isEmpty()) {
-			List<String> ret = new ArrayList<String>();
-			ret.add("--- " + original);
-			ret.add("+++ " + revised);
-
-			List<Delta<String>> patchDeltas = new ArrayList<Delta<String>>(
-					patch.getDeltas());
-
-			// code outside the if block also works for single-delta issues.
-			List<Delta<String>> deltas = new ArrayList<Delta<String>>(); // current
-																			// list
-																			// of
-			// Delta's to
-			// process
-			Delta<String> delta = patchDeltas.get(0);
-			deltas.add(delta); // add the first Delta to the current set
-			// if there's more than 1 Delta, we may need to output them together
-			if (patchDeltas.size() > 1) {
-				for (int i = 1; i < patchDeltas.size(); i++) {
-					int position = delta.getOriginal().getPosition(); // store
-																		// the
-																		// current
-																		// position
-																		// of
-					// the first Delta
-
-					// Check if the next Delta is too close to the current
-					// position.
-					// And if it is, add it to the current set
-					Delta<String> nextDelta = patchDeltas.get(i);
-					if ((position + delta.getOriginal().size() + contextSize) >= (nextDelta
-							.getOriginal().getPosition() - contextSize)) {
-						deltas.add(nextDelta);
-					} else {
-						// if it isn't, output the current set,
-						// then create a new set and add the current Delta to
-						// it.
-						List<String> curBlock = processDeltas(originalLines,
-								deltas, contextSize);
-						ret.addAll(curBlock);
-						deltas.clear();
-						deltas.add(nextDelta);
-					}
-					delta = nextDelta;
-				}
-
-			}
-			// don't forget to process the last set of Deltas
-			List<String> curBlock = processDeltas(originalLines, deltas,
-					contextSize);
-			ret.addAll(curBlock);
-			return ret;
-		}
-		return new ArrayList<String>();
+		return UnifiedDiffWriter.toLines(original, revised, originalLines,
+				patch, contextSize);
 	}
 
 	/**
-	 * processDeltas takes a list of Deltas and outputs them together in a
-	 * single block of Unified-Diff-format text.
+	 * Writes the unified diff representation of the given patch to the given
+	 * destination, without building it in memory first. The text is the one
+	 * returned by
+	 * {@link #generateUnifiedDiff(String, String, List, Patch, int)}, with a
+	 * {@code '\n'} after every line.
 	 * 
-	 * @param origLines
-	 *            - the lines of the original file
-	 * @param deltas
-	 *            - the Deltas to be output as a single block
+	 * @param original
+	 *            - Filename of the original (unrevised file)
+	 * @param revised
+	 *            - Filename of the revised file
+	 * @param originalLines
+	 *            - Lines of the original file
+	 * @param patch
+	 *            - Patch created by the diff() function
 	 * @param contextSize
-	 *            - the number of lines of context to place around block
-	 * @return
-	 * @author Bill James (tankerbay@gmail.com)
-	 */
-	private static List<String> processDeltas(List<String> origLines,
-			List<Delta<String>> deltas, int contextSize) {
-		List<String> buffer = new ArrayList<String>();
-		int origTotal = 0; // counter for total lines output from Original
-		int revTotal = 0; // counter for total lines output from Original
-		int line;
-
-		Delta<String> curDelta = deltas.get(0);
-
-		// NOTE: +1 to overcome the 0-offset Position
-		int origStart = curDelta.getOriginal().getPosition() + 1 - contextSize;
-		if (origStart < 1) {
-			origStart = 1;
-		}
-
-		int revStart = curDelta.getRevised().getPosition() + 1 - contextSize;
-		if (revStart < 1) {
-			revStart = 1;
-		}
-
-		// find the start of the wrapper context code
-		int contextStart = curDelta.getOriginal().getPosition() - contextSize;
-		if (contextStart < 0) {
-			contextStart = 0; // clamp to the start of the file
-		}
-
-		// output the context before the first Delta
-		for (line = contextStart; line < curDelta.getOriginal().getPosition(); line++) { //
-			buffer.add(" " + origLines.get(line));
-			origTotal++;
-			revTotal++;
-		}
-
-		// output the first Delta
-		buffer.addAll(getDeltaText(curDelta));
-		origTotal += curDelta.getOriginal().getLines().size();
-		revTotal += curDelta.getRevised().getLines().size();
-
-		int deltaIndex = 1;
-		while (deltaIndex < deltas.size()) { // for each of the other Deltas
-			Delta<String> nextDelta = deltas.get(deltaIndex);
-			int intermediateStart = curDelta.getOriginal().getPosition()
-					+ curDelta.getOriginal().getLines().size();
-			for (line = intermediateStart; line < nextDelta.getOriginal()
-					.getPosition(); line++) {
-				// output the code between the last Delta and this one
-				buffer.add(" " + origLines.get(line));
-				origTotal++;
-				revTotal++;
-			}
-			buffer.addAll(getDeltaText(nextDelta)); // output the Delta
-			origTotal += nextDelta.getOriginal().getLines().size();
-			revTotal += nextDelta.getRevised().getLines().size();
-			curDelta = nextDelta;
-			deltaIndex++;
-		}
-
-		// Now output the post-Delta context code, clamping the end of the file
-		contextStart = curDelta.getOriginal().getPosition()
-				+ curDelta.getOriginal().getLines().size();
-		for (line = contextStart; (line < (contextStart + contextSize))
-				&& (line < origLines.size()); line++) {
-			buffer.add(" " + origLines.get(line));
-			origTotal++;
-			revTotal++;
-		}
-
-		// Create and insert the block header, conforming to the Unified Diff
-		// standard
-		StringBuffer header = new StringBuffer();
-		header.append("@@ -");
-		header.append(origStart);
-		header.append(",");
-		header.append(origTotal);
-		header.append(" +");
-		header.append(revStart);
-		header.append(",");
-		header.append(revTotal);
-		header.append(" @@");
-		buffer.add(0, header.toString());
-
-		return buffer;
-	}
-
-	/**
-	 * getDeltaText returns the lines to be added to the Unified Diff text from
-	 * the Delta parameter
-	 * 
-	 * @param delta
-	 *            - the Delta to output
-	 * @return list of String lines of code.
-	 * @author Bill James (tankerbay@gmail.com)
+	 *            - number of lines of context output around each difference in
+	 *            the file.
+	 * @param out
+	 *            - the destination, e.g. a Writer
+	 * @throws IOException
+	 *             if the destination fails
 	 */
-	private static List<String> getDeltaText(Delta<String> delta) {
-		List<String> buffer = new ArrayList<String>();
-		for (String line : delta.getOriginal().getLines()) {
-			buffer.add("-" + line);
-		}
-		for (String line : delta.getRevised().getLines()) {
-			buffer.add("+" + line);
-		}
-		return buffer;
+	public static void writeUnifiedDiff(String original, String revised,
+			List<String> originalLines, Patch<String> patch, int contextSize,
+			Appendable out) throws IOException {
+		new UnifiedDiffWriter(out).write(original, revised, originalLines,
+				patch, contextSize);
 	}
 
 }
@@ -0,0 +1,139 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The result of a diff algorithm before it is turned into deltas: one flag per
+ * element of each sequence telling whether that element was deleted (original)
+ * or inserted (revised). Every unflagged element is matched, in order, with an
+ * unflagged element of the other sequence.
+ */
+final class EditScript {
+    
+    /** The change flags of the original sequence. */
+    final boolean[] originalChanged;
+    
+    /** The change flags of the revised sequence. */
+    final boolean[] revisedChanged;
+    
+    /** Whether some region was given up instead of being searched. */
+    boolean approximate;
+    
+    EditScript(int originalSize, int revisedSize) {
+        originalChanged = new boolean[originalSize];
+        revisedChanged = new boolean[revisedSize];
+    }
+    
+    /**
+     * Builds the patch described by the change flags. Consecutive flagged
+     * elements become one delta: a {@link ChangeDelta} if both sides have
+     * flagged elements at that point, otherwise a {@link DeleteDelta} or an
+     * {@link InsertDelta}.
+     * 
+     * @param original the original sequence the flags were computed for.
+     * @param revised the revised sequence the flags were computed for.
+     * @return the patch. Never {@code null}.
+     */
+    <T> Patch<T> toPatch(List<T> original, List<T> revised) {
+        return toPatch(original, revised, 0, 0);
+    }
+    
+    /**
+     * Builds the patch described by the change flags, when they were only
+     * computed for a part of the sequences: flag {@code i} of the original
+     * side stands for element {@code originalOffset + i} and so on. The chunk
+     * positions are relative to the whole sequences.
+     * 
+     * @param original the whole original sequence.
+     * @param revised the whole revised sequence.
+     * @param originalOffset the position of the first flagged original element.
+     * @param revisedOffset the position of the first flagged revised element.
+     * @return the patch. Never {@code null}.
+     */
+    <T> Patch<T> toPatch(List<T> original, List<T> revised, int originalOffset, int revisedOffset) {
+        Patch<T> patch = new Patch<T>();
+        patch.setApproximate(approximate);
+        int n = originalChanged.length;
+        int m = revisedChanged.length;
+        int i = 0;
+        int j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && !originalChanged[i] && !revisedChanged[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int i0 = i;
+            int j0 = j;
+            while (i < n && originalChanged[i]) {
+                i++;
+            }
+            while (j < m && revisedChanged[j]) {
+                j++;
+            }
+            if (i0 == i && j0 == j) {
+                throw new IllegalStateException("unmatched elements left at " + i + ", " + j);
+            }
+            int io = originalOffset + i0;
+            int jo = revisedOffset + j0;
+            Chunk<T> orig = new Chunk<T>(io, new ArrayList<T>(original.subList(io, originalOffset + i)));
+            Chunk<T> rev = new Chunk<T>(jo, new ArrayList<T>(revised.subList(jo, revisedOffset + j)));
+            if (i0 == i) {
+                patch.addDelta(new InsertDelta<T>(orig, rev));
+            } else if (j0 == j) {
+                patch.addDelta(new DeleteDelta<T>(orig, rev));
+            } else {
+                patch.addDelta(new ChangeDelta<T>(orig, rev));
+            }
+        }
+        return patch;
+    }
+    
+    /**
+     * Describes the change flags as index ranges, without touching the
+     * elements. Flag {@code i} of the original side stands for element
+     * {@code originalOffset + i} and so on, as in
+     * {@link #toPatch(List, List, int, int)}.
+     * 
+     * @param originalOffset the position of the first flagged original element.
+     * @param revisedOffset the position of the first flagged revised element.
+     * @return the index patch. Never {@code null}.
+     */
+    IndexPatch toIndexPatch(int originalOffset, int revisedOffset) {
+        int n = originalChanged.length;
+        int m = revisedChanged.length;
+        int[] ranges = new int[16];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && !originalChanged[i] && !revisedChanged[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int i0 = i;
+            int j0 = j;
+            while (i < n && originalChanged[i]) {
+                i++;
+            }
+            while (j < m && revisedChanged[j]) {
+                j++;
+            }
+            if (i0 == i && j0 == j) {
+                throw new IllegalStateException("unmatched elements left at " + i + ", " + j);
+            }
+            if (4 * count + 4 > ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            ranges[4 * count] = originalOffset + i0;
+            ranges[4 * count + 1] = i - i0;
+            ranges[4 * count + 2] = revisedOffset + j0;
+            ranges[4 * count + 3] = j - j0;
+            count++;
+        }
+        return new IndexPatch(ranges, count);
+    }
+}
@@ -0,0 +1,245 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Applies a patch to a text which differs slightly from the one it was
+ * computed for, in the way of GNU patch.
+ * <p>
+ * Every delta is first tried at its position, moved by the offset of the
+ * previous delta. If it does not match there, it is looked for within
+ * {@code maxOffset} lines of that position, the nearest match winning. If it
+ * is not found, up to {@code maxFuzz} of its leading and trailing context
+ * lines (the lines its original and revised chunks start or end with) are
+ * ignored, one more at each end per round; ignored context lines are left as
+ * they are in the target.
+ * </p>
+ * <p>
+ * The search does not compare lines with equals at every position: on the
+ * first miss, the lines of the target are interned and indexed by id, and a
+ * candidate position is only checked where the rarest line of the delta
+ * occurs.
+ * </p>
+ */
+final class FuzzyApply<T> {
+
+    private final List<T> target;
+    private final int maxOffset;
+    private final int maxFuzz;
+
+    /** Built on the first delta not found at its position. */
+    private Interner<T> interner;
+    private int[] ids;
+    /** The positions of id k are positions[starts[k], starts[k + 1]), ascending. */
+    private int[] starts;
+    private int[] positions;
+
+    /** The placement found by {@link #find}. */
+    private int foundPosition;
+
+    FuzzyApply(List<T> target, int maxOffset, int maxFuzz) {
+        this.target = target instanceof RandomAccess ? target : new ArrayList<T>(target);
+        this.maxOffset = maxOffset;
+        this.maxFuzz = maxFuzz;
+    }
+
+    FuzzyPatchResult<T> apply(List<Delta<T>> deltas) throws PatchFailedException {
+        int count = deltas.size();
+        int[] offsets = new int[count];
+        int[] fuzz = new int[count];
+        int[] from = new int[count];
+        int[] to = new int[count];
+        int[] keepStart = new int[count];
+        int[] keepEnd = new int[count];
+        int offset = 0;
+        int previousEnd = 0;
+        for (int d = 0; d < count; d++) {
+            Chunk<T> original = deltas.get(d).getOriginal();
+            Chunk<T> revised = deltas.get(d).getRevised();
+            List<T> lines = original.getLines();
+            int leading = 0;
+            int limit = Math.min(original.size(), revised.size());
+            while (leading < limit && lines.get(leading).equals(revised.getLines().get(leading))) {
+                leading++;
+            }
+            int trailing = 0;
+            while (trailing < limit - leading && lines.get(lines.size() - 1 - trailing)
+                    .equals(revised.getLines().get(revised.size() - 1 - trailing))) {
+                trailing++;
+            }
+
+            boolean found = false;
+            for (int z = 0; z <= maxFuzz && !found; z++) {
+                int dropStart = Math.min(z, leading);
+                int dropEnd = Math.min(z, trailing);
+                if (z > 0 && dropStart + dropEnd == Math.min(z - 1, leading) + Math.min(z - 1, trailing)) {
+                    // no more context to ignore
+                    break;
+                }
+                int length = original.size() - dropStart - dropEnd;
+                if (length == 0 && original.size() > 0) {
+                    // nothing left to anchor the delta
+                    break;
+                }
+                int expected = original.getPosition() + dropStart + offset;
+                if (find(lines, dropStart, length, expected, previousEnd)) {
+                    found = true;
+                    offset = foundPosition - original.getPosition() - dropStart;
+                    offsets[d] = offset;
+                    fuzz[d] = z;
+                    from[d] = foundPosition;
+                    to[d] = foundPosition + length;
+                    keepStart[d] = dropStart;
+                    keepEnd[d] = dropEnd;
+                    previousEnd = to[d];
+                }
+            }
+            if (!found) {
+                throw new PatchFailedException("Incorrect patch for delta: delta at original position "
+                        + original.getPosition() + " not found within " + maxOffset
+                        + " lines and fuzz " + maxFuzz);
+            }
+        }
+
+        int size = target.size();
+        for (int d = 0; d < count; d++) {
+            size += deltas.get(d).getRevised().size() - keepStart[d] - keepEnd[d] - (to[d] - from[d]);
+        }
+        List<T> result = new ArrayList<T>(Math.max(size, 0));
+        int position = 0;
+        for (int d = 0; d < count; d++) {
+            List<T> revised = deltas.get(d).getRevised().getLines();
+            result.addAll(target.subList(position, from[d]));
+            result.addAll(revised.subList(keepStart[d], revised.size() - keepEnd[d]));
+            position = to[d];
+        }
+        result.addAll(target.subList(position, target.size()));
+        return new FuzzyPatchResult<T>(result, offsets, fuzz);
+    }
+
+    /**
+     * Looks for {@code lines[skip, skip + length)} at the target position
+     * nearest to {@code expected}, no further than maxOffset and not before
+     * {@code minPosition}.
+     *
+     * @return true and sets foundPosition if it was found.
+     */
+    private boolean find(List<T> lines, int skip, int length, int expected, int minPosition) {
+        int low = Math.max(minPosition, expected - maxOffset);
+        int high = Math.min(target.size() - length, expected + maxOffset);
+        if (low > high) {
+            return false;
+        }
+        if (length == 0) {
+            foundPosition = Math.min(Math.max(expected, low), high);
+            return true;
+        }
+        if (expected >= low && expected <= high && matchesAt(lines, skip, length, expected)) {
+            foundPosition = expected;
+            return true;
+        }
+        if (maxOffset == 0) {
+            return false;
+        }
+
+        if (ids == null) {
+            index();
+        }
+        // anchor on the rarest line of the delta
+        int[] pattern = interner.intern(lines, skip, skip + length);
+        int anchor = -1;
+        int anchorId = -1;
+        int anchorCount = Integer.MAX_VALUE;
+        for (int k = 0; k < length; k++) {
+            int id = pattern[k];
+            int occurrences = id < starts.length - 1 ? starts[id + 1] - starts[id] : 0;
+            if (occurrences < anchorCount) {
+                anchor = k;
+                anchorId = id;
+                anchorCount = occurrences;
+            }
+        }
+        if (anchorCount == 0) {
+            return false;
+        }
+        // the occurrences of the anchor putting the delta within [low, high]
+        int first = lowerBound(starts[anchorId], starts[anchorId + 1], low + anchor);
+        int best = -1;
+        for (int p = first; p < starts[anchorId + 1] && positions[p] - anchor <= high; p++) {
+            int candidate = positions[p] - anchor;
+            if (best >= 0 && Math.abs(candidate - expected) >= Math.abs(best - expected)) {
+                break;
+            }
+            if (matchesIds(pattern, candidate)) {
+                if (best < 0 || Math.abs(candidate - expected) < Math.abs(best - expected)) {
+                    best = candidate;
+                }
+            }
+        }
+        if (best < 0) {
+            return false;
+        }
+        foundPosition = best;
+        return true;
+    }
+
+    private boolean matchesAt(List<T> lines, int skip, int length, int position) {
+        for (int k = 0; k < length; k++) {
+            if (!target.get(position + k).equals(lines.get(skip + k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesIds(int[] pattern, int position) {
+        for (int k = 0; k < pattern.length; k++) {
+            if (ids[position + k] != pattern[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Interns the target lines and sorts their positions by id, with a
+     * counting sort.
+     */
+    private void index() {
+        int n = target.size();
+        interner = new Interner<T>(n);
+        ids = interner.intern(target, 0, n);
+        int distinct = interner.size();
+        starts = new int[distinct + 1];
+        for (int id : ids) {
+            starts[id + 1]++;
+        }
+        for (int k = 0; k < distinct; k++) {
+            starts[k + 1] += starts[k];
+        }
+        positions = new int[n];
+        int[] next = new int[distinct];
+        System.arraycopy(starts, 0, next, 0, distinct);
+        for (int i = 0; i < n; i++) {
+            positions[next[ids[i]]++] = i;
+        }
+    }
+
+    /**
+     * @return the first index in {@code positions[from, to)} whose value is
+     *         at least {@code value}.
+     */
+    private int lowerBound(int from, int to, int value) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (positions[mid] < value) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+}
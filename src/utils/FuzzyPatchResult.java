@@ -0,0 +1,59 @@
+package utils;
+
+import java.util.List;
+
+/**
+ * The result of {@link Patch#applyFuzzy(List, int, int)}: the patched text,
+ * and for every delta where it was applied and how much of its context had
+ * to be ignored.
+ *
+ * @param T The type of the compared elements in the 'lines'.
+ */
+public class FuzzyPatchResult<T> {
+
+    private final List<T> patched;
+    private final int[] offsets;
+    private final int[] fuzz;
+
+    FuzzyPatchResult(List<T> patched, int[] offsets, int[] fuzz) {
+        this.patched = patched;
+        this.offsets = offsets;
+        this.fuzz = fuzz;
+    }
+
+    /**
+     * @return the patched text
+     */
+    public List<T> getPatched() {
+        return patched;
+    }
+
+    /**
+     * @param delta the index of the delta in {@link Patch#getDeltas()}
+     * @return how many lines after (positive) or before (negative) its
+     *         original position the delta was found
+     */
+    public int getOffset(int delta) {
+        return offsets[delta];
+    }
+
+    /**
+     * @param delta the index of the delta in {@link Patch#getDeltas()}
+     * @return how many context lines at each end of the delta were ignored
+     */
+    public int getFuzz(int delta) {
+        return fuzz[delta];
+    }
+
+    /**
+     * @return whether every delta applied at its position with all its context
+     */
+    public boolean isExact() {
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] != 0 || fuzz[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
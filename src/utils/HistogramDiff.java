@@ -0,0 +1,234 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A histogram diff, the unique-element anchored variant of the patience diff.
+ * <p>
+ * For a region of the two sequences, the algorithm counts how often every
+ * element occurs in the original side, then looks for the longest common run
+ * which contains the rarest elements. That run is kept unchanged and the
+ * regions before and after it are handled in the same way. Repeated elements
+ * such as blank lines or closing braces are never used as anchors, so the
+ * hunks follow the unique lines of the text and are easier to read, and the
+ * search does not waste time on diagonals that only match on noise. A region
+ * without any usable anchor is handed over to {@link MyersDiff}.
+ * </p>
+ * <p>
+ * Like {@link MyersDiff}, the search stops with a
+ * {@link CancellationException} when its thread is interrupted.
+ * </p>
+ *
+ * @param T The type of the compared elements in the 'lines'.
+ */
+public class HistogramDiff<T> implements DiffAlgorithm<T>, IntDiffAlgorithm {
+
+    /**
+     * Elements occurring more often than this in a region are not used as
+     * anchors.
+     */
+    private static final int MAX_CHAIN_LENGTH = 64;
+
+    /**
+     * {@inheritDoc}
+     */
+    public Patch<T> diff(T[] original, T[] revised) {
+        return diff(Arrays.asList(original), Arrays.asList(revised));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Patch<T> diff(List<T> original, List<T> revised) {
+        if (original == null) {
+            throw new IllegalArgumentException("original list must not be null");
+        }
+        if (revised == null) {
+            throw new IllegalArgumentException("revised list must not be null");
+        }
+        // the histogram needs hashable elements anyway
+        return DiffUtils.diffInterned(original, revised, this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean usesEquals() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void diff(int[] original, int[] revised, EditScript script) {
+        int distinctIds = 0;
+        for (int id : original) {
+            distinctIds = Math.max(distinctIds, id + 1);
+        }
+        for (int id : revised) {
+            distinctIds = Math.max(distinctIds, id + 1);
+        }
+        new Histogram(original, revised, distinctIds, script).compare();
+    }
+
+    /**
+     * The search over two sequences of interned element ids.
+     */
+    static final class Histogram {
+        private final int[] a;
+        private final int[] b;
+        private final EditScript script;
+
+        /** Occurrences of each id in the current original region. */
+        private final int[] count;
+
+        /** First position of each id in the current original region, or -1. */
+        private final int[] head;
+
+        /** Next position of the same id in the current original region, or -1. */
+        private final int[] next;
+
+        /** Fallback for regions without anchors, created on first use. */
+        private MyersDiff.IntComparison myers;
+
+        /** The best anchor found by the last call of {@link #findAnchor}. */
+        private int anchorA;
+        private int anchorB;
+        private int anchorLength;
+
+        Histogram(int[] a, int[] b, int distinctIds, EditScript script) {
+            this.a = a;
+            this.b = b;
+            this.script = script;
+            count = new int[distinctIds];
+            head = new int[distinctIds];
+            next = new int[a.length];
+            Arrays.fill(head, -1);
+        }
+
+        /**
+         * Flags every changed element of the two whole sequences. Regions
+         * are kept on an explicit stack, since a text where every anchor only
+         * splits off a single line would otherwise recurse once per line.
+         */
+        void compare() {
+            int[] stack = new int[64];
+            int top = 0;
+            stack[top++] = 0;
+            stack[top++] = a.length;
+            stack[top++] = 0;
+            stack[top++] = b.length;
+            while (top > 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("diff interrupted");
+                }
+                int be = stack[--top];
+                int bs = stack[--top];
+                int ae = stack[--top];
+                int as = stack[--top];
+
+                while (as < ae && bs < be && a[as] == b[bs]) {
+                    as++;
+                    bs++;
+                }
+                while (as < ae && bs < be && a[ae - 1] == b[be - 1]) {
+                    ae--;
+                    be--;
+                }
+                if (as == ae) {
+                    Arrays.fill(script.revisedChanged, bs, be, true);
+                    continue;
+                }
+                if (bs == be) {
+                    Arrays.fill(script.originalChanged, as, ae, true);
+                    continue;
+                }
+
+                if (!findAnchor(as, ae, bs, be)) {
+                    if (myers == null) {
+                        myers = new MyersDiff.IntComparison(a, b);
+                    }
+                    myers.compare(script, as, ae, bs, be);
+                    continue;
+                }
+
+                if (top + 8 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = anchorA + anchorLength;
+                stack[top++] = ae;
+                stack[top++] = anchorB + anchorLength;
+                stack[top++] = be;
+                stack[top++] = as;
+                stack[top++] = anchorA;
+                stack[top++] = bs;
+                stack[top++] = anchorB;
+            }
+        }
+
+        /**
+         * Looks for the common run of {@code [as, ae)} and {@code [bs, be)}
+         * whose rarest element has the lowest occurrence count in the
+         * original region, preferring longer runs on ties.
+         *
+         * @return false if no element of the revised region occurs in the
+         *         original region at most {@link #MAX_CHAIN_LENGTH} times.
+         */
+        private boolean findAnchor(int as, int ae, int bs, int be) {
+            for (int i = ae - 1; i >= as; i--) {
+                int id = a[i];
+                count[id]++;
+                next[i] = head[id];
+                head[id] = i;
+            }
+
+            int bestCount = MAX_CHAIN_LENGTH + 1;
+            anchorLength = 0;
+            int bi = bs;
+            while (bi < be) {
+                int id = b[bi];
+                int c = count[id];
+                if (c == 0 || c > MAX_CHAIN_LENGTH || c > bestCount) {
+                    bi++;
+                    continue;
+                }
+                int nextB = bi + 1;
+                for (int ai = head[id]; ai != -1; ai = next[ai]) {
+                    int rc = c;
+                    int sa = ai;
+                    int sb = bi;
+                    while (sa > as && sb > bs && a[sa - 1] == b[sb - 1]) {
+                        sa--;
+                        sb--;
+                        rc = Math.min(rc, count[a[sa]]);
+                    }
+                    int ea = ai + 1;
+                    int eb = bi + 1;
+                    while (ea < ae && eb < be && a[ea] == b[eb]) {
+                        rc = Math.min(rc, count[a[ea]]);
+                        ea++;
+                        eb++;
+                    }
+                    if (rc < bestCount || (rc == bestCount && ea - sa > anchorLength)) {
+                        bestCount = rc;
+                        anchorA = sa;
+                        anchorB = sb;
+                        anchorLength = ea - sa;
+                    }
+                    if (nextB < eb) {
+                        nextB = eb;
+                    }
+                }
+                bi = nextB;
+            }
+
+            for (int i = as; i < ae; i++) {
+                count[a[i]] = 0;
+                head[a[i]] = -1;
+            }
+            return anchorLength > 0;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package utils;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Renders the rows as the rows of an html table with an old and a new column.
+ * Every row has the name of its tag as css class ({@code equal},
+ * {@code change}...), and the changed parts of the lines are wrapped in the
+ * inline tag with the old or new css class.
+ */
+public class HtmlDiffRowRenderer implements DiffRowRenderer {
+    private final String oldStartTag;
+    private final String newStartTag;
+    private final String endTag;
+    private final String[] rowStarts;
+    
+    /**
+     * Creates a renderer marking the changes with the defaults of
+     * {@link DiffRowGenerator}: span tags with the editOldInline and
+     * editNewInline css classes.
+     */
+    public HtmlDiffRowRenderer() {
+        this("span", "editOldInline", "editNewInline");
+    }
+    
+    /**
+     * @param tag the tag wrapping the changed parts, without angle brackets
+     * @param oldCssClass the css class of the changed parts of the old lines, or null
+     * @param newCssClass the css class of the changed parts of the new lines, or null
+     */
+    public HtmlDiffRowRenderer(String tag, String oldCssClass, String newCssClass) {
+        if (tag == null) {
+            throw new IllegalArgumentException("tag must not be null");
+        }
+        oldStartTag = InlineDiff.startTag(tag, oldCssClass);
+        newStartTag = InlineDiff.startTag(tag, newCssClass);
+        endTag = "</" + tag + ">";
+        DiffRow.Tag[] tags = DiffRow.Tag.values();
+        rowStarts = new String[tags.length];
+        for (DiffRow.Tag rowTag : tags) {
+            rowStarts[rowTag.ordinal()] = "<tr class=\"" + rowTag.name().toLowerCase(Locale.ROOT) + "\">";
+        }
+    }
+    
+    public void start(Appendable out) throws IOException {
+        out.append("<table class=\"diff\">\n");
+    }
+    
+    public void render(DiffRow row, Appendable out) throws IOException {
+        out.append(rowStarts[row.getTag().ordinal()]);
+        if (row.getTag() == DiffRow.Tag.SKIP) {
+            out.append("<td colspan=\"2\">").append(String.valueOf(row.getSkipped()))
+                    .append(" unchanged lines</td></tr>\n");
+            return;
+        }
+        out.append("<td>");
+        appendLine(row.getOldLine(), row.getOldChanges(), oldStartTag, out);
+        out.append("</td><td>");
+        appendLine(row.getNewLine(), row.getNewChanges(), newStartTag, out);
+        out.append("</td></tr>\n");
+    }
+    
+    public void end(Appendable out) throws IOException {
+        out.append("</table>\n");
+    }
+    
+    private void appendLine(String line, int[] changes, String startTag, Appendable out)
+            throws IOException {
+        if (line == null) {
+            return;
+        }
+        int position = 0;
+        for (int k = 0; k < changes.length; k += 2) {
+            appendEscaped(line, position, changes[k], out);
+            out.append(startTag);
+            appendEscaped(line, changes[k], changes[k + 1], out);
+            out.append(endTag);
+            position = changes[k + 1];
+        }
+        appendEscaped(line, position, line.length(), out);
+    }
+    
+    private static void appendEscaped(String line, int from, int to, Appendable out) throws IOException {
+        int start = from;
+        for (int i = from; i < to; i++) {
+            String entity;
+            switch (line.charAt(i)) {
+            case '<':
+                entity = "&lt;";
+                break;
+            case '>':
+                entity = "&gt;";
+                break;
+            case '&':
+                entity = "&amp;";
+                break;
+            case '"':
+                entity = "&quot;";
+                break;
+            default:
+                continue;
+            }
+            out.append(line, start, i).append(entity);
+            start = i + 1;
+        }
+        out.append(line, start, to);
+    }
+}
@@ -0,0 +1,200 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Applies or restores a patch inside the target list instead of building a
+ * new one.
+ * <p>
+ * All deltas are verified before the list is touched. The unchanged spans
+ * between the deltas are then moved to their final positions: first, left to
+ * right, the spans which move towards the head, then, from the tail, the spans
+ * which move towards the tail. In that order no span overwrites another one
+ * which has not moved yet, so every element moves at most once and no scratch
+ * buffer is needed. The lines of the deltas are written into the gaps last.
+ * </p>
+ * <p>
+ * A list has no bulk move, so its spans are moved element by element with
+ * get and set. An array, with the length of its text given apart, has every
+ * span moved by a single System.arraycopy instead.
+ * </p>
+ * <p>
+ * A patch changing the size of the text needs a resizable list. The list is
+ * grown, or probed with an add and a remove when it will shrink, before any
+ * element moves, so a fixed-size list throws an
+ * UnsupportedOperationException while it is still unchanged.
+ * </p>
+ */
+final class InPlaceApply {
+
+    private InPlaceApply() {
+    }
+
+    /**
+     * @param revert false to apply the deltas, true to restore them.
+     */
+    static <T> void apply(List<T> target, List<Delta<T>> deltas, boolean revert)
+            throws PatchFailedException {
+        if (!(target instanceof RandomAccess)) {
+            throw new IllegalArgumentException("target must be a RandomAccess list");
+        }
+        int count = deltas.size();
+        int size = target.size();
+        int growth = verify(target, deltas, revert);
+        // a list which can not be resized throws here, before anything moved
+        if (growth > 0) {
+            target.addAll(Collections.<T> nCopies(growth, null));
+        } else if (growth < 0) {
+            target.add(null);
+            target.remove(size);
+        }
+
+        // the spans moving towards the head, from the head
+        int shift = 0;
+        for (int d = 0; d <= count; d++) {
+            if (shift < 0) {
+                int start = spanStart(deltas, d, revert);
+                int end = spanEnd(deltas, d, size, revert);
+                for (int i = start; i < end; i++) {
+                    target.set(i + shift, target.get(i));
+                }
+            }
+            if (d < count) {
+                shift += to(deltas.get(d), revert).size() - from(deltas.get(d), revert).size();
+            }
+        }
+        // the spans moving towards the tail, from the tail
+        for (int d = count; d >= 0; d--) {
+            if (shift > 0) {
+                int start = spanStart(deltas, d, revert);
+                int end = spanEnd(deltas, d, size, revert);
+                for (int i = end - 1; i >= start; i--) {
+                    target.set(i + shift, target.get(i));
+                }
+            }
+            if (d > 0) {
+                shift -= to(deltas.get(d - 1), revert).size() - from(deltas.get(d - 1), revert).size();
+            }
+        }
+        // the delta lines, into the gaps
+        for (int d = 0; d < count; d++) {
+            Chunk<T> from = from(deltas.get(d), revert);
+            List<T> lines = to(deltas.get(d), revert).getLines();
+            int at = from.getPosition() + shift;
+            for (int i = 0; i < lines.size(); i++) {
+                target.set(at + i, lines.get(i));
+            }
+            shift += lines.size() - from.size();
+        }
+        if (growth < 0) {
+            target.subList(size + growth, size).clear();
+        }
+    }
+
+    /**
+     * Applies or restores the deltas on the first {@code size} elements of an
+     * array, moving every unchanged span with one System.arraycopy.
+     *
+     * @param revert false to apply the deltas, true to restore them.
+     * @return the size of the patched text
+     */
+    static <T> int apply(T[] target, int size, List<Delta<T>> deltas, boolean revert)
+            throws PatchFailedException {
+        if (size < 0 || size > target.length) {
+            throw new IllegalArgumentException("size must be between 0 and the target length");
+        }
+        int count = deltas.size();
+        int growth = verify(Arrays.asList(target).subList(0, size), deltas, revert);
+        if (size + growth > target.length) {
+            throw new IllegalArgumentException("target is too short for the patched text");
+        }
+
+        // the same two passes as for a list, one System.arraycopy per span
+        int shift = 0;
+        for (int d = 0; d <= count; d++) {
+            if (shift < 0) {
+                int start = spanStart(deltas, d, revert);
+                int end = spanEnd(deltas, d, size, revert);
+                System.arraycopy(target, start, target, start + shift, end - start);
+            }
+            if (d < count) {
+                shift += to(deltas.get(d), revert).size() - from(deltas.get(d), revert).size();
+            }
+        }
+        for (int d = count; d >= 0; d--) {
+            if (shift > 0) {
+                int start = spanStart(deltas, d, revert);
+                int end = spanEnd(deltas, d, size, revert);
+                System.arraycopy(target, start, target, start + shift, end - start);
+            }
+            if (d > 0) {
+                shift -= to(deltas.get(d - 1), revert).size() - from(deltas.get(d - 1), revert).size();
+            }
+        }
+        for (int d = 0; d < count; d++) {
+            Chunk<T> from = from(deltas.get(d), revert);
+            List<T> lines = to(deltas.get(d), revert).getLines();
+            int at = from.getPosition() + shift;
+            for (int i = 0; i < lines.size(); i++) {
+                target[at + i] = lines.get(i);
+            }
+            shift += lines.size() - from.size();
+        }
+        if (growth < 0) {
+            Arrays.fill(target, size + growth, size, null);
+        }
+        return size + growth;
+    }
+
+    /**
+     * Verifies all deltas against the target before anything is changed.
+     *
+     * @return how much the deltas change the size of the text
+     */
+    private static <T> int verify(List<T> target, List<Delta<T>> deltas, boolean revert)
+            throws PatchFailedException {
+        int growth = 0;
+        int position = 0;
+        for (int d = 0; d < deltas.size(); d++) {
+            Chunk<T> from = from(deltas.get(d), revert);
+            if (from.getPosition() < position) {
+                throw new PatchFailedException("Incorrect patch for delta: delta "
+                        + (revert ? "revised" : "original") + " position overlaps the previous delta");
+            }
+            from.verify(target);
+            growth += to(deltas.get(d), revert).size() - from.size();
+            position = from.getPosition() + from.size();
+        }
+        return growth;
+    }
+
+    private static <T> Chunk<T> from(Delta<T> delta, boolean revert) {
+        return revert ? delta.getRevised() : delta.getOriginal();
+    }
+
+    private static <T> Chunk<T> to(Delta<T> delta, boolean revert) {
+        return revert ? delta.getOriginal() : delta.getRevised();
+    }
+
+    /**
+     * @return the start of the unchanged span before delta {@code d}.
+     */
+    private static <T> int spanStart(List<Delta<T>> deltas, int d, boolean revert) {
+        if (d == 0) {
+            return 0;
+        }
+        Chunk<T> previous = from(deltas.get(d - 1), revert);
+        return previous.getPosition() + previous.size();
+    }
+
+    /**
+     * @return the end of the unchanged span before delta {@code d}, or of the
+     *         tail for {@code d == deltas.size()}.
+     */
+    private static <T> int spanEnd(List<Delta<T>> deltas, int d, int size, boolean revert) {
+        return d < deltas.size() ? from(deltas.get(d), revert).getPosition() : size;
+    }
+}
@@ -0,0 +1,129 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The difference between two sequences of primitives, described by index
+ * ranges only. It is the counterpart of {@link Patch} for the
+ * {@code DiffUtils.diff(int[], int[])} family: instead of one {@link Delta}
+ * and two {@link Chunk} objects holding the affected elements, every delta is
+ * four ints in a single array.
+ */
+public class IndexPatch {
+
+    /** Per delta: original position, original size, revised position, revised size. */
+    private final int[] ranges;
+    private final int size;
+
+    IndexPatch(int[] ranges, int size) {
+        this.ranges = ranges;
+        this.size = size;
+    }
+
+    /**
+     * @return the number of deltas.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of the delta, in the order of the positions.
+     * @return the type of the delta.
+     */
+    public Delta.TYPE getType(int index) {
+        checkIndex(index);
+        if (ranges[4 * index + 1] == 0) {
+            return Delta.TYPE.INSERT;
+        }
+        if (ranges[4 * index + 3] == 0) {
+            return Delta.TYPE.DELETE;
+        }
+        return Delta.TYPE.CHANGE;
+    }
+
+    /**
+     * @param index the index of the delta, in the order of the positions.
+     * @return the position of the delta in the original sequence.
+     */
+    public int getOriginalPosition(int index) {
+        checkIndex(index);
+        return ranges[4 * index];
+    }
+
+    /**
+     * @param index the index of the delta, in the order of the positions.
+     * @return the number of original elements deleted or changed.
+     */
+    public int getOriginalSize(int index) {
+        checkIndex(index);
+        return ranges[4 * index + 1];
+    }
+
+    /**
+     * @param index the index of the delta, in the order of the positions.
+     * @return the position of the delta in the revised sequence.
+     */
+    public int getRevisedPosition(int index) {
+        checkIndex(index);
+        return ranges[4 * index + 2];
+    }
+
+    /**
+     * @param index the index of the delta, in the order of the positions.
+     * @return the number of revised elements inserted or changed.
+     */
+    public int getRevisedSize(int index) {
+        checkIndex(index);
+        return ranges[4 * index + 3];
+    }
+
+    /**
+     * Builds the equivalent patch over the given sequences, e.g. the token
+     * strings the primitive ids were computed from.
+     *
+     * @param original the original sequence.
+     * @param revised the revised sequence.
+     * @return the patch. Never {@code null}.
+     */
+    public <T> Patch<T> toPatch(List<T> original, List<T> revised) {
+        Patch<T> patch = new Patch<T>();
+        for (int i = 0; i < size; i++) {
+            int op = ranges[4 * i];
+            int os = ranges[4 * i + 1];
+            int rp = ranges[4 * i + 2];
+            int rs = ranges[4 * i + 3];
+            Chunk<T> orig = new Chunk<T>(op, new ArrayList<T>(original.subList(op, op + os)));
+            Chunk<T> rev = new Chunk<T>(rp, new ArrayList<T>(revised.subList(rp, rp + rs)));
+            if (os == 0) {
+                patch.addDelta(new InsertDelta<T>(orig, rev));
+            } else if (rs == 0) {
+                patch.addDelta(new DeleteDelta<T>(orig, rev));
+            } else {
+                patch.addDelta(new ChangeDelta<T>(orig, rev));
+            }
+        }
+        return patch;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(getType(i)).append(" -").append(ranges[4 * i]).append(',')
+                    .append(ranges[4 * i + 1]).append(" +").append(ranges[4 * i + 2]).append(',')
+                    .append(ranges[4 * i + 3]);
+        }
+        return result.append(']').toString();
+    }
+}
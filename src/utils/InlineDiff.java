@@ -0,0 +1,296 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import utils.DiffRowGenerator.Granularity;
+
+/**
+ * Marks the changes inside a changed block of lines for
+ * {@link DiffRowGenerator}.
+ * <p>
+ * The lines of each side are joined into one char array. For
+ * {@link Granularity#CHARACTER} the arrays are diffed directly; otherwise
+ * they are cut into tokens, the tokens are interned into int ids and the id
+ * arrays are diffed. The tagged lines are then written in one pass over each
+ * array, a changed range being closed at every line break and reopened on the
+ * next line, so every line carries balanced tags. For the rows left to a
+ * {@link DiffRowRenderer}, the changed ranges are returned per line instead.
+ * </p>
+ */
+final class InlineDiff {
+
+    /** With this many inline deltas or more, the lines are left unmarked. */
+    private static final int MAX_DELTAS = 3;
+
+    private final Granularity granularity;
+    private final String oldStartTag;
+    private final String oldEndTag;
+    private final String newStartTag;
+    private final String newEndTag;
+
+    InlineDiff(Granularity granularity, String oldTag, String oldCssClass, String newTag,
+            String newCssClass) {
+        this.granularity = granularity;
+        oldStartTag = startTag(oldTag, oldCssClass);
+        oldEndTag = "</" + oldTag + ">";
+        newStartTag = startTag(newTag, newCssClass);
+        newEndTag = "</" + newTag + ">";
+    }
+
+    static String startTag(String tag, String cssClass) {
+        StringBuilder tagBuilder = new StringBuilder();
+        tagBuilder.append("<");
+        tagBuilder.append(tag);
+        if (cssClass != null) {
+            tagBuilder.append(" class=\"");
+            tagBuilder.append(cssClass);
+            tagBuilder.append("\"");
+        }
+        tagBuilder.append(">");
+        return tagBuilder.toString();
+    }
+
+    /**
+     * Replaces the lines of both chunks of the delta by their marked up
+     * version, unless they differ in too many places.
+     */
+    void addInlineDiffs(Delta<String> delta) {
+        char[] original = join(delta.getOriginal().getLines());
+        char[] revised = join(delta.getRevised().getLines());
+        int[] changes = changes(original, revised);
+        if (changes == null) {
+            return;
+        }
+        delta.getOriginal().setLines(markup(original, changes, 0, oldStartTag, oldEndTag));
+        delta.getRevised().setLines(markup(revised, changes, 2, newStartTag, newEndTag));
+    }
+
+    /**
+     * Returns the changed parts of every line of the delta, leaving its lines
+     * as they are.
+     *
+     * @return for the original ([0]) and revised ([1]) lines, per line, the
+     *         start and end offsets of its changed parts one after the other;
+     *         or null if the lines differ in too many places.
+     */
+    int[][][] lineChanges(Delta<String> delta) {
+        char[] original = join(delta.getOriginal().getLines());
+        char[] revised = join(delta.getRevised().getLines());
+        int[] changes = changes(original, revised);
+        if (changes == null) {
+            return null;
+        }
+        return new int[][][] { lineChanges(original, changes, 0, delta.getOriginal().size()),
+                lineChanges(revised, changes, 2, delta.getRevised().size()) };
+    }
+
+    /**
+     * @return per inline delta, the start and end of its original range and
+     *         the start and end of its revised range, in chars; or null if
+     *         there are too many inline deltas.
+     */
+    private int[] changes(char[] original, char[] revised) {
+        int[] originalStarts = null;
+        int[] revisedStarts = null;
+        IndexPatch patch;
+        if (granularity == Granularity.CHARACTER) {
+            patch = DiffUtils.diff(original, revised);
+        } else {
+            originalStarts = tokenize(original);
+            revisedStarts = tokenize(revised);
+            Map<String, Integer> ids = new HashMap<String, Integer>();
+            patch = DiffUtils.diff(intern(original, originalStarts, ids),
+                    intern(revised, revisedStarts, ids));
+        }
+        if (patch.size() >= MAX_DELTAS) {
+            return null;
+        }
+        int[] changes = new int[4 * patch.size()];
+        for (int d = 0; d < patch.size(); d++) {
+            int originalPosition = patch.getOriginalPosition(d);
+            int revisedPosition = patch.getRevisedPosition(d);
+            changes[4 * d] = offset(originalStarts, originalPosition);
+            changes[4 * d + 1] = offset(originalStarts, originalPosition + patch.getOriginalSize(d));
+            changes[4 * d + 2] = offset(revisedStarts, revisedPosition);
+            changes[4 * d + 3] = offset(revisedStarts, revisedPosition + patch.getRevisedSize(d));
+        }
+        return changes;
+    }
+
+    private static int offset(int[] starts, int token) {
+        return starts == null ? token : starts[token];
+    }
+
+    private static char[] join(List<String> lines) {
+        int length = Math.max(lines.size() - 1, 0);
+        for (String line : lines) {
+            length += line.length();
+        }
+        char[] text = new char[length];
+        int position = 0;
+        for (String line : lines) {
+            if (position > 0) {
+                text[position - 1] = '\n';
+            }
+            line.getChars(0, line.length(), text, position);
+            position += line.length() + 1;
+        }
+        return text;
+    }
+
+    /**
+     * @return the start of every token, followed by the length of the text.
+     *         A line break is always a token of its own.
+     */
+    private int[] tokenize(char[] text) {
+        int[] starts = new int[text.length + 1];
+        int count = 0;
+        int i = 0;
+        while (i < text.length) {
+            starts[count++] = i;
+            char c = text[i++];
+            if (c == '\n') {
+                continue;
+            }
+            if (granularity == Granularity.WORD) {
+                boolean space = Character.isWhitespace(c);
+                while (i < text.length && text[i] != '\n' && Character.isWhitespace(text[i]) == space) {
+                    i++;
+                }
+            } else if (Character.isWhitespace(c)) {
+                while (i < text.length && text[i] != '\n' && Character.isWhitespace(text[i])) {
+                    i++;
+                }
+            } else if (isWordChar(c)) {
+                while (i < text.length && isWordChar(text[i])) {
+                    i++;
+                }
+            } else if (c == '&' || c == '<') {
+                // the entities and line wraps put in by StringUtills.normalize and wrapText
+                int end = i;
+                while (end < text.length && isWordChar(text[end])) {
+                    end++;
+                }
+                if (end < text.length && end > i && text[end] == (c == '&' ? ';' : '>')) {
+                    i = end + 1;
+                }
+            }
+        }
+        starts[count] = text.length;
+        int[] result = new int[count + 1];
+        System.arraycopy(starts, 0, result, 0, count + 1);
+        return result;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static int[] intern(char[] text, int[] starts, Map<String, Integer> ids) {
+        int[] result = new int[starts.length - 1];
+        for (int k = 0; k < result.length; k++) {
+            String token = new String(text, starts[k], starts[k + 1] - starts[k]);
+            Integer id = ids.get(token);
+            if (id == null) {
+                id = ids.size();
+                ids.put(token, id);
+            }
+            result[k] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the lines of one side, with its changed ranges wrapped in the
+     * tags.
+     *
+     * @param side 0 for the original side of the changes, 2 for the revised one
+     */
+    private static List<String> markup(char[] text, int[] changes, int side, String startTag,
+            String endTag) {
+        List<String> lines = new ArrayList<String>();
+        StringBuilder line = new StringBuilder(text.length + changes.length / 4
+                * (startTag.length() + endTag.length()));
+        int position = 0;
+        for (int d = 0; d < changes.length; d += 4) {
+            position = append(text, position, changes[d + side], line, lines, null, null);
+            position = append(text, position, changes[d + side + 1], line, lines, startTag, endTag);
+        }
+        append(text, position, text.length, line, lines, null, null);
+        lines.add(line.toString());
+        return lines;
+    }
+
+    /**
+     * Cuts the changed ranges of one side at the line breaks.
+     *
+     * @param side 0 for the original side of the changes, 2 for the revised one
+     * @return per line, the start and end offsets of its changed parts
+     */
+    private static int[][] lineChanges(char[] text, int[] changes, int side, int lineCount) {
+        int[][] result = new int[lineCount][];
+        // a line has at most one part of every change
+        int[] parts = new int[changes.length / 2];
+        int lineStart = 0;
+        int d = 0;
+        for (int k = 0; k < lineCount; k++) {
+            int lineEnd = lineStart;
+            while (lineEnd < text.length && text[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int count = 0;
+            // the changes ending before this line are behind d already
+            for (int e = d; e < changes.length && changes[e + side] < lineEnd; e += 4) {
+                int from = Math.max(changes[e + side], lineStart);
+                int to = Math.min(changes[e + side + 1], lineEnd);
+                if (from < to) {
+                    parts[count++] = from - lineStart;
+                    parts[count++] = to - lineStart;
+                }
+            }
+            while (d < changes.length && changes[d + side + 1] <= lineEnd) {
+                d += 4;
+            }
+            result[k] = new int[count];
+            System.arraycopy(parts, 0, result[k], 0, count);
+            lineStart = lineEnd + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Appends {@code text[from, to)} to the current line, moving to a new line
+     * at every line break, and wraps every non-empty piece in the tags if they
+     * are given.
+     *
+     * @return {@code to}
+     */
+    private static int append(char[] text, int from, int to, StringBuilder line, List<String> lines,
+            String startTag, String endTag) {
+        while (from < to) {
+            int end = from;
+            while (end < to && text[end] != '\n') {
+                end++;
+            }
+            if (end > from) {
+                if (startTag != null) {
+                    line.append(startTag);
+                }
+                line.append(text, from, end - from);
+                if (endTag != null) {
+                    line.append(endTag);
+                }
+            }
+            if (end < to) {
+                lines.add(line.toString());
+                line.setLength(0);
+                end++;
+            }
+            from = end;
+        }
+        return to;
+    }
+}
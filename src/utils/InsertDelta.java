@@ -26,10 +26,7 @@ public class InsertDelta<T> extends Delta<T> {
 	public void applyTo(List<T> target) throws PatchFailedException {
 		verify(target);
 		int position = this.getOriginal().getPosition();
-		List<T> lines = this.getRevised().getLines();
-		for (int i = 0; i < lines.size(); i++) {
-			target.add(position + i, lines.get(i));
-		}
+		target.addAll(position, this.getRevised().getLines());
 	}
 
 	/**
@@ -39,9 +36,7 @@ public class InsertDelta<T> extends Delta<T> {
 	public void restore(List<T> target) {
 		int position = getRevised().getPosition();
 		int size = getRevised().size();
-		for (int i = 0; i < size; i++) {
-			target.remove(position);
-		}
+		target.subList(position, position + size).clear();
 	}
 
 	@Override
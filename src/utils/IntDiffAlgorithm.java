@@ -0,0 +1,30 @@
+package utils;
+
+/**
+ * Implemented by the diff algorithms which can work on interned element ids
+ * instead of the elements themselves. {@link DiffUtils} maps every distinct
+ * element to an int once, so that the algorithm compares ints instead of
+ * calling {@link Object#equals} for every comparison.
+ */
+interface IntDiffAlgorithm {
+    
+    /**
+     * Tells whether this algorithm compares elements with
+     * {@link Object#equals}. Only then the elements may be replaced by ids
+     * interned through {@link Object#hashCode}.
+     * 
+     * @return true if interned ids can be used.
+     */
+    boolean usesEquals();
+    
+    /**
+     * Computes the difference between two sequences of element ids. Ids are
+     * dense, i.e. between {@code 0} and the number of distinct elements.
+     * 
+     * @param original The original ids. Must not be {@code null}.
+     * @param revised The revised ids. Must not be {@code null}.
+     * @param script The script receiving the changed flags, sized for the
+     *            two sequences.
+     */
+    void diff(int[] original, int[] revised, EditScript script);
+}
@@ -0,0 +1,94 @@
+package utils;
+
+import java.util.List;
+
+/**
+ * Maps every distinct element to a dense int id, starting from {@code 0}.
+ * Elements are looked up through {@link Object#hashCode} and
+ * {@link Object#equals} in an open addressing table, so interning does not
+ * box the ids.
+ * 
+ * @param T The type of the interned elements.
+ */
+final class Interner<T> {
+    
+    private Object[] keys;
+    private int[] ids;
+    private int size;
+    
+    /**
+     * @param expectedSize the number of elements which will be interned,
+     *            used to size the table so that it never needs to grow.
+     */
+    Interner(int expectedSize) {
+        int capacity = 64;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        keys = new Object[capacity];
+        ids = new int[capacity];
+    }
+    
+    /**
+     * @return the id of the given element, a new one if it was not seen yet.
+     */
+    int intern(T element) {
+        int mask = keys.length - 1;
+        int i = hash(element) & mask;
+        Object key;
+        while ((key = keys[i]) != null) {
+            if (key.equals(element)) {
+                return ids[i];
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = element;
+        ids[i] = size;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+    
+    /**
+     * @return the ids of the elements of {@code lines} between {@code from}
+     *         (inclusive) and {@code to} (exclusive).
+     */
+    int[] intern(List<T> lines, int from, int to) {
+        int[] result = new int[to - from];
+        for (int i = from; i < to; i++) {
+            result[i - from] = intern(lines.get(i));
+        }
+        return result;
+    }
+    
+    /**
+     * @return the number of distinct elements seen so far.
+     */
+    int size() {
+        return size;
+    }
+    
+    private void rehash() {
+        Object[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new Object[oldKeys.length * 2];
+        ids = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = hash(oldKeys[j]) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                ids[i] = oldIds[j];
+            }
+        }
+    }
+    
+    private static int hash(Object element) {
+        int h = element.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
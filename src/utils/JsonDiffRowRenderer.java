@@ -0,0 +1,105 @@
+package utils;
+
+import java.io.IOException;
+
+/**
+ * Renders the rows as a JSON array of objects, one per row:
+ * {@code {"tag":"CHANGE","old":"...","new":"...","oldChanges":[2,5],"newChanges":[2,6]}}.
+ * A missing line is left out, and so are the changes of a line without any.
+ * A {@link DiffRow.Tag#SKIP} row is {@code {"tag":"SKIP","skipped":12}}.
+ * <p>
+ * The renderer remembers whether it wrote a row since {@link #start}, so one
+ * instance renders one array at a time.
+ * </p>
+ */
+public class JsonDiffRowRenderer implements DiffRowRenderer {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private boolean first;
+    
+    public void start(Appendable out) throws IOException {
+        out.append('[');
+        first = true;
+    }
+    
+    public void render(DiffRow row, Appendable out) throws IOException {
+        out.append(first ? "\n{\"tag\":\"" : ",\n{\"tag\":\"").append(row.getTag().name()).append('"');
+        first = false;
+        if (row.getTag() == DiffRow.Tag.SKIP) {
+            out.append(",\"skipped\":");
+            appendNumber(row.getSkipped(), out);
+            out.append('}');
+            return;
+        }
+        appendString(",\"old\":", row.getOldLine(), out);
+        appendString(",\"new\":", row.getNewLine(), out);
+        appendChanges(",\"oldChanges\":", row.getOldChanges(), out);
+        appendChanges(",\"newChanges\":", row.getNewChanges(), out);
+        out.append('}');
+    }
+    
+    public void end(Appendable out) throws IOException {
+        out.append(first ? "]\n" : "\n]\n");
+    }
+    
+    private static void appendString(String name, String value, Appendable out) throws IOException {
+        if (value == null) {
+            return;
+        }
+        out.append(name).append('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= ' ' && c != '"' && c != '\\') {
+                continue;
+            }
+            out.append(value, start, i).append('\\');
+            switch (c) {
+            case '"':
+            case '\\':
+                out.append(c);
+                break;
+            case '\n':
+                out.append('n');
+                break;
+            case '\r':
+                out.append('r');
+                break;
+            case '\t':
+                out.append('t');
+                break;
+            default:
+                out.append("u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+            start = i + 1;
+        }
+        out.append(value, start, value.length()).append('"');
+    }
+    
+    private static void appendChanges(String name, int[] changes, Appendable out) throws IOException {
+        if (changes.length == 0) {
+            return;
+        }
+        out.append(name).append('[');
+        for (int k = 0; k < changes.length; k++) {
+            if (k > 0) {
+                out.append(',');
+            }
+            appendNumber(changes[k], out);
+        }
+        out.append(']');
+    }
+    
+    /**
+     * Appends a non-negative number digit by digit.
+     */
+    private static void appendNumber(int value, Appendable out) throws IOException {
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+    }
+}
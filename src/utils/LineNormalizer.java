@@ -0,0 +1,19 @@
+package utils;
+
+/**
+ * Maps a line to the form it is compared by, for diffs ignoring some
+ * differences between lines.
+ * 
+ * @see DiffUtils#diff(java.util.List, java.util.List, LineNormalizer)
+ */
+public interface LineNormalizer {
+    
+    /**
+     * Returns the form of the line to compare. Two lines are the same for the
+     * diff when their normalized forms are equal.
+     * 
+     * @param line The line. Must not be {@code null}.
+     * @return The normalized line. Never {@code null}.
+     */
+    public String normalize(String line);
+}
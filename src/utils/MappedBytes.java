@@ -0,0 +1,127 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A byte sequence addressed by long positions, backed by one or more
+ * {@link ByteBuffer} segments. A file is mapped in segments of 1 GiB, so
+ * files larger than the 2 GiB limit of a single mapping are supported and
+ * nothing is copied onto the heap.
+ */
+final class MappedBytes {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final ByteBuffer[] segments;
+    private final long size;
+
+    private MappedBytes(ByteBuffer[] segments, long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    /**
+     * Maps the first {@code size} bytes of the given channel.
+     *
+     * @param mode READ_ONLY, or READ_WRITE to grow the file to {@code size}
+     *            bytes and write to it.
+     */
+    static MappedBytes map(FileChannel channel, FileChannel.MapMode mode, long size)
+            throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long position = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(mode, position, Math.min(SEGMENT_SIZE, size - position));
+        }
+        return new MappedBytes(segments, size);
+    }
+
+    static MappedBytes wrap(byte[] bytes) {
+        ByteBuffer[] segments = new ByteBuffer[(bytes.length + SEGMENT_MASK) >>> SEGMENT_SHIFT];
+        for (int i = 0; i < segments.length; i++) {
+            int position = i << SEGMENT_SHIFT;
+            segments[i] = ByteBuffer.wrap(bytes, position,
+                    Math.min(SEGMENT_SIZE, bytes.length - position)).slice();
+        }
+        return new MappedBytes(segments, bytes.length);
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * Copies {@code length} bytes from {@code position} into {@code dst}.
+     */
+    void get(long position, byte[] dst, int offset, int length) {
+        while (length > 0) {
+            ByteBuffer segment = segment(position);
+            int n = Math.min(length, segment.remaining());
+            segment.get(dst, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Copies {@code length} bytes from {@code position} of {@code src} to
+     * {@code position} of this sequence, segment by segment.
+     */
+    void put(long position, MappedBytes src, long srcPosition, long length) {
+        while (length > 0) {
+            ByteBuffer from = src.segment(srcPosition);
+            ByteBuffer to = segment(position);
+            int n = (int) Math.min(length, Math.min(from.remaining(), to.remaining()));
+            from.limit(from.position() + n);
+            to.put(from);
+            position += n;
+            srcPosition += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Copies the given bytes to {@code position}.
+     */
+    void put(long position, byte[] src) {
+        int offset = 0;
+        while (offset < src.length) {
+            ByteBuffer to = segment(position);
+            int n = Math.min(src.length - offset, to.remaining());
+            to.put(src, offset, n);
+            position += n;
+            offset += n;
+        }
+    }
+
+    /**
+     * Writes the changes of a READ_WRITE mapping to the file.
+     */
+    void force() {
+        for (ByteBuffer segment : segments) {
+            if (segment instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) segment).force();
+            }
+        }
+    }
+
+    /**
+     * @return a view of the segment holding {@code position}, positioned
+     *         there and ending at the end of the segment.
+     */
+    private ByteBuffer segment(long position) {
+        ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)].duplicate();
+        segment.position((int) (position & SEGMENT_MASK));
+        return segment;
+    }
+}
@@ -0,0 +1,207 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The lines of a memory mapped text file. Only the start offset of every line
+ * is kept on the heap, in an int array unless the file is larger than 2 GiB;
+ * lines are compared and hashed on the mapped bytes, and decoded into Strings
+ * only when {@link #get} is called.
+ * <p>
+ * Lines end with {@code "\n"}, {@code "\r"} or {@code "\r\n"}, as for
+ * {@link java.io.BufferedReader#readLine}, so the charset must encode these
+ * two characters as single bytes, as UTF-8 and the ISO-8859 charsets do.
+ * </p>
+ */
+final class MappedLines extends AbstractList<String> implements RandomAccess {
+
+    private final MappedBytes bytes;
+    private final Charset charset;
+    private final int size;
+
+    /** The start of every line plus the size of the file, as ints if it fits. */
+    private final int[] starts;
+    private final long[] longStarts;
+
+    private MappedLines(MappedBytes bytes, Charset charset) {
+        this.bytes = bytes;
+        this.charset = charset;
+        long length = bytes.size();
+        boolean small = length <= Integer.MAX_VALUE;
+        int[] ints = small ? new int[64] : null;
+        long[] longs = small ? null : new long[64];
+        int count = 0;
+        long start = 0;
+        for (long i = 0; i < length; i++) {
+            byte b = bytes.get(i);
+            if (b == '\n' || (b == '\r' && (i + 1 == length || bytes.get(i + 1) != '\n'))) {
+                if (small) {
+                    if (count + 2 > ints.length) {
+                        ints = Arrays.copyOf(ints, ints.length * 2);
+                    }
+                    ints[count++] = (int) start;
+                } else {
+                    if (count + 2 > longs.length) {
+                        longs = Arrays.copyOf(longs, longs.length * 2);
+                    }
+                    longs[count++] = start;
+                }
+                start = i + 1;
+            }
+        }
+        // the last line has no terminator
+        boolean unterminated = start < length;
+        if (small) {
+            if (unterminated) {
+                ints[count++] = (int) start;
+            }
+            ints[count] = (int) length;
+        } else {
+            if (unterminated) {
+                longs[count++] = start;
+            }
+            longs[count] = length;
+        }
+        this.size = count;
+        this.starts = ints;
+        this.longStarts = longs;
+    }
+
+    /**
+     * Maps the given file and indexes its lines.
+     */
+    static MappedLines map(Path file, Charset charset) throws IOException {
+        if ("\n".getBytes(charset).length != 1 || "\r".getBytes(charset).length != 1) {
+            throw new IllegalArgumentException("charset " + charset
+                    + " does not encode line terminators as single bytes");
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedLines(MappedBytes.map(channel, FileChannel.MapMode.READ_ONLY,
+                    channel.size()), charset);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decodes the given line.
+     */
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        long start = start(index);
+        byte[] line = new byte[(int) (end(index) - start)];
+        bytes.get(start, line, 0, line.length);
+        return new String(line, charset);
+    }
+
+    /**
+     * @return whether line {@code i} has the same bytes as line {@code j} of
+     *         {@code other}.
+     */
+    boolean lineEquals(int i, MappedLines other, int j) {
+        long start = start(i);
+        long end = end(i);
+        long otherStart = other.start(j);
+        if (end - start != other.end(j) - otherStart) {
+            return false;
+        }
+        for (long k = 0; k < end - start; k++) {
+            if (bytes.get(start + k) != other.bytes.get(otherStart + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the hash of the bytes of the given line.
+     */
+    int hash(int index) {
+        int h = 0x811C9DC5;
+        for (long k = start(index), end = end(index); k < end; k++) {
+            h = (h ^ bytes.get(k)) * 0x01000193;
+        }
+        return h;
+    }
+
+    private long start(int index) {
+        return starts != null ? starts[index] : longStarts[index];
+    }
+
+    /**
+     * @return the end of the given line, before its terminator.
+     */
+    private long end(int index) {
+        long start = start(index);
+        long end = starts != null ? starts[index + 1] : longStarts[index + 1];
+        if (end > start && bytes.get(end - 1) == '\n') {
+            end--;
+        }
+        if (end > start && bytes.get(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Maps every distinct line of {@code original[from, originalTo)} and
+     * {@code revised[from, revisedTo)} to a dense id, comparing the mapped
+     * bytes.
+     *
+     * @return the ids of the original lines and of the revised lines.
+     */
+    static int[][] intern(MappedLines original, MappedLines revised, int from, int originalTo,
+            int revisedTo) {
+        int count = originalTo - from + revisedTo - from;
+        int capacity = 64;
+        while (capacity < count * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        // per slot: the side and line of the first occurrence, its hash and its id plus one
+        MappedLines[] keySides = new MappedLines[capacity];
+        int[] keyLines = new int[capacity];
+        int[] hashes = new int[capacity];
+        int[] ids = new int[capacity];
+        int distinct = 0;
+        int[][] result = { new int[originalTo - from], new int[revisedTo - from] };
+        MappedLines[] sides = { original, revised };
+        int[] ends = { originalTo, revisedTo };
+        int mask = capacity - 1;
+        for (int s = 0; s < 2; s++) {
+            MappedLines lines = sides[s];
+            for (int line = from; line < ends[s]; line++) {
+                int h = lines.hash(line);
+                int mixed = h * 0x9E3779B9;
+                int i = (mixed ^ (mixed >>> 16)) & mask;
+                while (ids[i] != 0 && (hashes[i] != h
+                        || !lines.lineEquals(line, keySides[i], keyLines[i]))) {
+                    i = (i + 1) & mask;
+                }
+                if (ids[i] == 0) {
+                    keySides[i] = lines;
+                    keyLines[i] = line;
+                    hashes[i] = h;
+                    ids[i] = ++distinct;
+                }
+                result[s][line - from] = ids[i] - 1;
+            }
+        }
+        return result;
+    }
+}
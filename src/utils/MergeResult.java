@@ -0,0 +1,151 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a three-way merge: the base text with the hunks of both sides
+ * applied, where each hunk is either resolved or a conflict.
+ *
+ * @param T The type of the compared elements in the 'lines'.
+ */
+public class MergeResult<T> {
+
+    private final List<T> base;
+    private final List<Hunk<T>> hunks;
+    private final List<Conflict<T>> conflicts;
+
+    /**
+     * A region of the base text changed by at least one side.
+     */
+    static final class Hunk<T> {
+        final int basePosition;
+        final int baseEnd;
+        /** The replacement of a resolved hunk, or null for a conflict. */
+        final List<T> lines;
+        final Conflict<T> conflict;
+
+        Hunk(int basePosition, int baseEnd, List<T> lines, Conflict<T> conflict) {
+            this.basePosition = basePosition;
+            this.baseEnd = baseEnd;
+            this.lines = lines;
+            this.conflict = conflict;
+        }
+    }
+
+    /**
+     * A region of the base text which both sides changed differently.
+     *
+     * @param T The type of the compared elements in the 'lines'.
+     */
+    public static class Conflict<T> {
+        private final Chunk<T> base;
+        private final Chunk<T> ours;
+        private final Chunk<T> theirs;
+
+        Conflict(Chunk<T> base, Chunk<T> ours, Chunk<T> theirs) {
+            this.base = base;
+            this.ours = ours;
+            this.theirs = theirs;
+        }
+
+        /**
+         * @return the conflicting region of the base text.
+         */
+        public Chunk<T> getBase() {
+            return base;
+        }
+
+        /**
+         * @return what our side made of the region, positioned in our text.
+         */
+        public Chunk<T> getOurs() {
+            return ours;
+        }
+
+        /**
+         * @return what their side made of the region, positioned in their text.
+         */
+        public Chunk<T> getTheirs() {
+            return theirs;
+        }
+
+        @Override
+        public String toString() {
+            return "[Conflict, base: " + base + ", ours: " + ours + ", theirs: " + theirs + "]";
+        }
+    }
+
+    MergeResult(List<T> base, List<Hunk<T>> hunks) {
+        this.base = base;
+        this.hunks = hunks;
+        List<Conflict<T>> found = new ArrayList<Conflict<T>>();
+        for (Hunk<T> hunk : hunks) {
+            if (hunk.conflict != null) {
+                found.add(hunk.conflict);
+            }
+        }
+        this.conflicts = Collections.unmodifiableList(found);
+    }
+
+    /**
+     * @return whether some hunk could not be resolved.
+     */
+    public boolean hasConflicts() {
+        return !conflicts.isEmpty();
+    }
+
+    /**
+     * @return the conflicts, in the order of the base text. The list is
+     *         unmodifiable.
+     */
+    public List<Conflict<T>> getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return the merged text.
+     * @throws IllegalStateException if there are conflicts.
+     */
+    public List<T> getMerged() {
+        if (hasConflicts()) {
+            throw new IllegalStateException(conflicts.size() + " unresolved conflicts");
+        }
+        return toList(null, null, null);
+    }
+
+    /**
+     * Returns the merged text, with every conflict written as our lines and
+     * their lines between markers, e.g. {@code "<<<<<<< ours"},
+     * {@code "======="} and {@code ">>>>>>> theirs"}.
+     *
+     * @param oursMarker the element before our lines.
+     * @param separator the element between our lines and theirs.
+     * @param theirsMarker the element after their lines.
+     * @return the merged text.
+     */
+    public List<T> getMerged(T oursMarker, T separator, T theirsMarker) {
+        return toList(oursMarker, separator, theirsMarker);
+    }
+
+    private List<T> toList(T oursMarker, T separator, T theirsMarker) {
+        List<T> result = new ArrayList<T>(base.size());
+        int position = 0;
+        for (Hunk<T> hunk : hunks) {
+            result.addAll(base.subList(position, hunk.basePosition));
+            if (hunk.conflict == null) {
+                result.addAll(hunk.lines);
+            } else {
+                result.add(oursMarker);
+                result.addAll(hunk.conflict.getOurs().getLines());
+                result.add(separator);
+                result.addAll(hunk.conflict.getTheirs().getLines());
+                result.add(theirsMarker);
+            }
+            position = hunk.baseEnd;
+        }
+        result.addAll(base.subList(position, base.size()));
+        return result;
+    }
+}
@@ -0,0 +1,375 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clean-room implementation of <a href="http://www.cs.arizona.edu/people/gene/">
+ * Eugene Myers</a> differencing algorithm, in its linear space variant.
+ * <p>
+ * Instead of remembering every furthest reaching D-path, the "middle snake" of
+ * an optimal edit script is searched from both ends of the sequences at once,
+ * and the two smaller problems on each side of it are solved recursively. The
+ * search only needs two vectors of {@code N + M + 3} ints, so memory stays
+ * linear in the size of the input whatever the size of the difference is. The
+ * running time is still {@code O((N + M) D)}.
+ * </p>
+ * <p>
+ * The search stops with a {@link CancellationException} when the thread
+ * running it is interrupted, so that a diff can be cancelled through its
+ * {@link java.util.concurrent.Future}.
+ * </p>
+ * <p>
+ * When two inputs are nearly unrelated, D is close to N + M and the search
+ * becomes quadratic. A maximum edit cost and a timeout can be given to bound
+ * it: a region whose edit distance is found to exceed the maximum cost, or
+ * which is still being searched when the timeout expires, is reported as
+ * changed as a whole. The patch is then valid but not minimal, which
+ * {@link Patch#isApproximate()} tells.
+ * </p>
+ *
+ * @see <a href="http://www.cs.arizona.edu/people/gene/PAPERS/diff.ps">An O(ND)
+ *      Difference Algorithm and its Variations</a>, section 4b.
+ * @param T The type of the compared elements in the 'lines'.
+ */
+public class MyersDiff<T> implements DiffAlgorithm<T>, IntDiffAlgorithm {
+
+    /** The equalizer, {@code null} to compare with {@link Object#equals}. */
+    private final Equalizer<T> equalizer;
+
+    /** The maximum edit cost of a region, 0 for no limit. */
+    private final int maxEditCost;
+
+    /** The time a diff may take, 0 for no limit. */
+    private final long timeoutNanos;
+
+    /**
+     * Constructs an instance of the Myers differencing algorithm which
+     * compares the elements with {@link Object#equals}.
+     */
+    public MyersDiff() {
+        this(0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructs an instance of the Myers differencing algorithm.
+     *
+     * @param equalizer Must not be {@code null}.
+     */
+    public MyersDiff(final Equalizer<T> equalizer) {
+        if (equalizer == null) {
+            throw new IllegalArgumentException("equalizer must not be null");
+        }
+        this.equalizer = equalizer;
+        this.maxEditCost = 0;
+        this.timeoutNanos = 0;
+    }
+
+    /**
+     * Constructs an instance of the Myers differencing algorithm with a
+     * bounded cost, which compares the elements with {@link Object#equals}.
+     *
+     * @param maxEditCost the number of inserted plus deleted elements above
+     *            which a region is given up and reported as changed as a
+     *            whole. 0 for no limit.
+     * @param timeout the time after which the regions still being searched
+     *            are given up. 0 for no limit.
+     * @param unit the unit of the timeout. Must not be {@code null}.
+     */
+    public MyersDiff(int maxEditCost, long timeout, TimeUnit unit) {
+        if (maxEditCost < 0) {
+            throw new IllegalArgumentException("maxEditCost must not be negative");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        this.equalizer = null;
+        this.maxEditCost = maxEditCost;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Patch<T> diff(final T[] original, final T[] revised) {
+        return diff(Arrays.asList(original), Arrays.asList(revised));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Patch<T> diff(final List<T> original, final List<T> revised) {
+        if (original == null) {
+            throw new IllegalArgumentException("original list must not be null");
+        }
+        if (revised == null) {
+            throw new IllegalArgumentException("revised list must not be null");
+        }
+        // the search reads elements by index, so avoid O(n) get() on linked lists
+        final List<T> orig = original instanceof RandomAccess ? original : new ArrayList<T>(original);
+        final List<T> rev = revised instanceof RandomAccess ? revised : new ArrayList<T>(revised);
+
+        EditScript script = new EditScript(orig.size(), rev.size());
+        limit(new Comparison() {
+            boolean equal(int x, int y) {
+                if (equalizer == null) {
+                    return orig.get(x).equals(rev.get(y));
+                }
+                return equalizer.equals(orig.get(x), rev.get(y));
+            }
+        }).compare(script);
+        return script.toPatch(orig, rev);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean usesEquals() {
+        return equalizer == null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void diff(int[] original, int[] revised, EditScript script) {
+        limit(new IntComparison(original, revised)).compare(script);
+    }
+
+    /**
+     * Applies the cost limits of this instance to a new search. The timeout
+     * starts now.
+     */
+    private Comparison limit(Comparison comparison) {
+        comparison.maxCost = maxEditCost;
+        if (timeoutNanos > 0) {
+            comparison.hasDeadline = true;
+            comparison.deadline = System.nanoTime() + timeoutNanos;
+        }
+        return comparison;
+    }
+
+    /**
+     * The divide and conquer search itself, independent of how the elements
+     * are stored. Positions are indexes into the original ({@code x}) and the
+     * revised ({@code y}) sequences; diagonals are numbered {@code k = x - y}.
+     */
+    abstract static class Comparison {
+
+        /** Furthest reaching x of the forward search, per diagonal. */
+        private int[] fd;
+
+        /** Furthest reaching x of the backward search, per diagonal. */
+        private int[] bd;
+
+        /** Added to a diagonal number to get its index in fd and bd. */
+        private int offset;
+
+        private EditScript script;
+        private boolean[] xchanged;
+        private boolean[] ychanged;
+
+        /** The edit cost above which a region is given up, 0 for no limit. */
+        int maxCost;
+
+        /** The System.nanoTime() after which regions are given up. */
+        boolean hasDeadline;
+        long deadline;
+
+        /** The middle snake found by the last call of {@link #split}. */
+        private int xmid;
+        private int ymid;
+
+        /**
+         * @return whether the original element at x equals the revised
+         *         element at y.
+         */
+        abstract boolean equal(int x, int y);
+
+        /**
+         * Flags in the given script every element that is not part of a
+         * longest common subsequence of the two whole sequences.
+         */
+        final void compare(EditScript script) {
+            compare(script, 0, script.originalChanged.length, 0, script.revisedChanged.length);
+        }
+
+        /**
+         * Flags in the given script every element of {@code [xoff, xlim)} and
+         * {@code [yoff, ylim)} that is not part of a longest common
+         * subsequence of these two ranges. Flags outside the ranges are left
+         * untouched. The diagonal vectors are reused between calls when they
+         * are large enough.
+         */
+        final void compare(EditScript script, int xoff, int xlim, int yoff, int ylim) {
+            this.script = script;
+            xchanged = script.originalChanged;
+            ychanged = script.revisedChanged;
+            int size = (xlim - xoff) + (ylim - yoff) + 3;
+            if (fd == null || fd.length < size) {
+                fd = new int[size];
+                bd = new int[size];
+            }
+            offset = ylim - xoff + 1;
+            compareseq(xoff, xlim, yoff, ylim);
+        }
+
+        /**
+         * Compares {@code [xoff, xlim)} with {@code [yoff, ylim)}. The common
+         * prefix and suffix are skipped first, then the problem is cut at its
+         * middle snake. Every cut halves the edit distance of both parts, so
+         * the recursion is at most {@code log2(D)} deep.
+         */
+        private void compareseq(int xoff, int xlim, int yoff, int ylim) {
+            while (xoff < xlim && yoff < ylim && equal(xoff, yoff)) {
+                xoff++;
+                yoff++;
+            }
+            while (xlim > xoff && ylim > yoff && equal(xlim - 1, ylim - 1)) {
+                xlim--;
+                ylim--;
+            }
+
+            if (xoff == xlim) {
+                while (yoff < ylim) {
+                    ychanged[yoff++] = true;
+                }
+            } else if (yoff == ylim) {
+                while (xoff < xlim) {
+                    xchanged[xoff++] = true;
+                }
+            } else if (!split(xoff, xlim, yoff, ylim)) {
+                // too expensive, the whole region is one change
+                Arrays.fill(xchanged, xoff, xlim, true);
+                Arrays.fill(ychanged, yoff, ylim, true);
+                script.approximate = true;
+            } else {
+                int x = xmid;
+                int y = ymid;
+                compareseq(xoff, x, yoff, y);
+                compareseq(x, xlim, y, ylim);
+            }
+        }
+
+        /**
+         * Finds the middle snake of {@code [xoff, xlim)} and
+         * {@code [yoff, ylim)} and stores its position in xmid and ymid. Both
+         * sequences must be non empty and differ at both ends.
+         *
+         * @return false if the search was given up because of the cost limit
+         *         or the deadline.
+         */
+        private boolean split(int xoff, int xlim, int yoff, int ylim) {
+            final int[] fd = this.fd;
+            final int[] bd = this.bd;
+            final int o = offset;
+
+            final int dmin = xoff - ylim;
+            final int dmax = xlim - yoff;
+            final int fmid = xoff - yoff;
+            final int bmid = xlim - ylim;
+            int fmin = fmid;
+            int fmax = fmid;
+            int bmin = bmid;
+            int bmax = bmid;
+            // when the delta is odd the paths can only meet on a forward step
+            final boolean odd = ((fmid - bmid) & 1) != 0;
+
+            fd[o + fmid] = xoff;
+            bd[o + bmid] = xlim;
+
+            for (int c = 0;; c++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("diff interrupted");
+                }
+                // every edit script of cost 2c or less would have been found
+                if (maxCost > 0 && 2 * c >= maxCost) {
+                    return false;
+                }
+                if (hasDeadline && System.nanoTime() - deadline > 0) {
+                    return false;
+                }
+                // extend the forward search by one edit
+                if (fmin > dmin) {
+                    fd[o + --fmin - 1] = -1;
+                } else {
+                    ++fmin;
+                }
+                if (fmax < dmax) {
+                    fd[o + ++fmax + 1] = -1;
+                } else {
+                    --fmax;
+                }
+                for (int d = fmax; d >= fmin; d -= 2) {
+                    int tlo = fd[o + d - 1];
+                    int thi = fd[o + d + 1];
+                    int x = tlo >= thi ? tlo + 1 : thi;
+                    int y = x - d;
+                    while (x < xlim && y < ylim && equal(x, y)) {
+                        x++;
+                        y++;
+                    }
+                    fd[o + d] = x;
+                    if (odd && bmin <= d && d <= bmax && bd[o + d] <= x) {
+                        xmid = x;
+                        ymid = y;
+                        return true;
+                    }
+                }
+
+                // and now every edit script of cost 2c + 1 or less
+                if (maxCost > 0 && 2 * c + 1 >= maxCost) {
+                    return false;
+                }
+
+                // extend the backward search by one edit
+                if (bmin > dmin) {
+                    bd[o + --bmin - 1] = Integer.MAX_VALUE;
+                } else {
+                    ++bmin;
+                }
+                if (bmax < dmax) {
+                    bd[o + ++bmax + 1] = Integer.MAX_VALUE;
+                } else {
+                    --bmax;
+                }
+                for (int d = bmax; d >= bmin; d -= 2) {
+                    int tlo = bd[o + d - 1];
+                    int thi = bd[o + d + 1];
+                    int x = tlo < thi ? tlo : thi - 1;
+                    int y = x - d;
+                    while (x > xoff && y > yoff && equal(x - 1, y - 1)) {
+                        x--;
+                        y--;
+                    }
+                    bd[o + d] = x;
+                    if (!odd && fmin <= d && d <= fmax && x <= fd[o + d]) {
+                        xmid = x;
+                        ymid = y;
+                        return true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A {@link Comparison} of two sequences of interned element ids.
+     */
+    static final class IntComparison extends Comparison {
+        private final int[] a;
+        private final int[] b;
+
+        IntComparison(int[] a, int[] b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        boolean equal(int x, int y) {
+            return a[x] == b[y];
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package utils;
+
+/**
+ * The normalization configured in a {@link DiffRowGenerator}: an optional
+ * custom normalizer, then the built-in options applied together in one pass
+ * over the chars of the line. No regular expression is involved, and a line
+ * the options leave as it is is returned as it is.
+ */
+final class NormalizerPipeline implements LineNormalizer {
+
+    private final LineNormalizer custom;
+    private final boolean ignoreWhiteSpaces;
+    private final boolean ignoreTrailingWhiteSpaces;
+    private final boolean ignoreCase;
+
+    private NormalizerPipeline(LineNormalizer custom, boolean ignoreWhiteSpaces,
+            boolean ignoreTrailingWhiteSpaces, boolean ignoreCase) {
+        this.custom = custom;
+        this.ignoreWhiteSpaces = ignoreWhiteSpaces;
+        this.ignoreTrailingWhiteSpaces = ignoreTrailingWhiteSpaces;
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * @param ignoreWhiteSpaces trim the line and turn every run of white
+     *            spaces in it into one space
+     * @param ignoreTrailingWhiteSpaces drop the white spaces ending the line
+     * @param ignoreCase compare the lines ignoring case, as
+     *            {@link String#equalsIgnoreCase(String)}
+     * @param custom applied before the options, or null
+     * @return the pipeline, or null if there is nothing to normalize
+     */
+    static LineNormalizer compile(boolean ignoreWhiteSpaces, boolean ignoreTrailingWhiteSpaces,
+            boolean ignoreCase, LineNormalizer custom) {
+        if (!ignoreWhiteSpaces && !ignoreTrailingWhiteSpaces && !ignoreCase) {
+            return custom;
+        }
+        return new NormalizerPipeline(custom, ignoreWhiteSpaces, ignoreTrailingWhiteSpaces,
+                ignoreCase);
+    }
+
+    public String normalize(String line) {
+        if (custom != null) {
+            line = custom.normalize(line);
+        }
+        int start = 0;
+        int end = line.length();
+        if (ignoreWhiteSpaces || ignoreTrailingWhiteSpaces) {
+            // as String.trim
+            while (end > start && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+        }
+        if (ignoreWhiteSpaces) {
+            while (start < end && line.charAt(start) <= ' ') {
+                start++;
+            }
+        }
+        // only created once the result differs from the line
+        StringBuilder result = null;
+        int i = start;
+        while (i < end) {
+            char c = line.charAt(i);
+            int next = i + 1;
+            char mapped = c;
+            if (ignoreWhiteSpaces && isSpace(c)) {
+                while (next < end && isSpace(line.charAt(next))) {
+                    next++;
+                }
+                mapped = ' ';
+            } else if (ignoreCase) {
+                mapped = Character.toLowerCase(Character.toUpperCase(c));
+            }
+            if (result == null && (mapped != c || next != i + 1)) {
+                result = new StringBuilder(end - start);
+                result.append(line, start, i);
+            }
+            if (result != null) {
+                result.append(mapped);
+            }
+            i = next;
+        }
+        if (result != null) {
+            return result.toString();
+        }
+        return start == 0 && end == line.length() ? line : line.substring(start, end);
+    }
+
+    /**
+     * @return whether the char is matched by the \s of a regular expression
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
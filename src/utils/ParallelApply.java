@@ -0,0 +1,204 @@
+package utils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Applies a patch with many deltas to a large target on a
+ * {@link ForkJoinPool}.
+ * <p>
+ * A first sequential pass over the deltas only checks that they do not overlap
+ * and computes where the output of every delta starts. The deltas are then
+ * split into ranges which verify their deltas and copy their unchanged spans
+ * and revised lines straight into their part of one result array, so the
+ * segments never need to be concatenated. The first failed verification stops
+ * the remaining tasks. The array is handed out as it is, wrapped in a
+ * resizable list, rather than copied into an ArrayList once more.
+ * </p>
+ */
+final class ParallelApply<T> {
+
+    /** Below this many output elements a task copies its range itself instead of forking. */
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+
+    private final List<T> target;
+    private final List<Delta<T>> deltas;
+
+    /** Per delta: where its unchanged span starts in the result; plus the tail. */
+    private final int[] outputs;
+    private final Object[] result;
+
+    private final AtomicReference<PatchFailedException> failure =
+            new AtomicReference<PatchFailedException>();
+
+    private ParallelApply(List<T> target, List<Delta<T>> deltas) throws PatchFailedException {
+        this.target = target instanceof RandomAccess ? target : new ArrayList<T>(target);
+        this.deltas = deltas;
+        int count = deltas.size();
+        outputs = new int[count + 1];
+        int position = 0;
+        int output = 0;
+        for (int d = 0; d < count; d++) {
+            Chunk<T> original = deltas.get(d).getOriginal();
+            if (original.getPosition() < position) {
+                throw new PatchFailedException("Incorrect patch for delta: "
+                        + "delta original position overlaps the previous delta");
+            }
+            if (original.getPosition() + original.size() > this.target.size()) {
+                throw new PatchFailedException("Incorrect Chunk: the position of chunk > target size");
+            }
+            outputs[d] = output;
+            output += original.getPosition() - position + deltas.get(d).getRevised().size();
+            position = original.getPosition() + original.size();
+        }
+        outputs[count] = output;
+        result = new Object[output + this.target.size() - position];
+    }
+
+    static <T> List<T> apply(List<T> target, List<Delta<T>> deltas, ForkJoinPool pool)
+            throws PatchFailedException {
+        ParallelApply<T> apply = new ParallelApply<T>(target, deltas);
+        pool.invoke(apply.new ApplyTask(0, deltas.size() + 1));
+        PatchFailedException e = apply.failure.get();
+        if (e != null) {
+            throw e;
+        }
+        return new ResultList<T>(apply.result);
+    }
+
+    /**
+     * Verifies delta {@code d} and copies its unchanged span and revised lines,
+     * or the tail of the target for {@code d == deltas.size()}.
+     */
+    private void copy(int d) throws PatchFailedException {
+        int position = d == 0 ? 0 : end(deltas.get(d - 1).getOriginal());
+        int output = outputs[d];
+        int spanEnd;
+        if (d < deltas.size()) {
+            deltas.get(d).verify(target);
+            spanEnd = deltas.get(d).getOriginal().getPosition();
+        } else {
+            spanEnd = target.size();
+        }
+        for (int i = position; i < spanEnd; i++) {
+            result[output++] = target.get(i);
+        }
+        if (d < deltas.size()) {
+            for (T line : deltas.get(d).getRevised().getLines()) {
+                result[output++] = line;
+            }
+        }
+    }
+
+    private static int end(Chunk<?> chunk) {
+        return chunk.getPosition() + chunk.size();
+    }
+
+    /**
+     * Copies the deltas {@code [from, to)}, splitting the range in two while
+     * its output is large.
+     */
+    private final class ApplyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        ApplyTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int size = (to < outputs.length ? outputs[to] : result.length) - outputs[from];
+            if (to - from <= 1 || size <= SEQUENTIAL_THRESHOLD) {
+                for (int d = from; d < to && failure.get() == null; d++) {
+                    try {
+                        copy(d);
+                    } catch (PatchFailedException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ApplyTask(from, mid), new ApplyTask(mid, to));
+        }
+    }
+
+    /**
+     * A resizable RandomAccess list adopting the result array, so the result
+     * is as mutable as the ArrayList of {@link Patch#applyTo(List)} without
+     * another copy of every element.
+     */
+    private static final class ResultList<T> extends AbstractList<T> implements RandomAccess {
+        private Object[] elements;
+        private int size;
+
+        ResultList(Object[] elements) {
+            this.elements = elements;
+            size = elements.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            checkIndex(index, size);
+            return (T) elements[index];
+        }
+
+        @Override
+        public T set(int index, T element) {
+            T previous = get(index);
+            elements[index] = element;
+            return previous;
+        }
+
+        @Override
+        public void add(int index, T element) {
+            checkIndex(index, size + 1);
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, Math.max(size + (size >> 1), size + 1));
+            }
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public T remove(int index) {
+            T previous = get(index);
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            elements[--size] = null;
+            modCount++;
+            return previous;
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            System.arraycopy(elements, toIndex, elements, fromIndex, size - toIndex);
+            Arrays.fill(elements, size - (toIndex - fromIndex), size, null);
+            size -= toIndex - fromIndex;
+            modCount++;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private void checkIndex(int index, int bound) {
+            if (index < 0 || index >= bound) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+        }
+    }
+}
@@ -1,57 +1,322 @@
 package utils;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
 
 public class Patch<T> {
-    private List<Delta<T>> deltas = new LinkedList<Delta<T>>();
+    /** The deltas, always sorted by their original position. */
+    private final ArrayList<Delta<T>> deltas = new ArrayList<Delta<T>>();
+    private final List<Delta<T>> unmodifiableDeltas = Collections.unmodifiableList(deltas);
+    private volatile boolean sealed;
+    private boolean approximate;
 
     /**
-     * Apply this patch to the given target
+     * Apply this patch to the given target. The deltas are walked once in
+     * order, the unchanged spans between them are copied in bulk, and every
+     * delta is verified against the target before it is applied.
      * @return the patched text
      * @throws PatchFailedException if can't apply patch
      */
     public List<T> applyTo(List<T> target) throws PatchFailedException {
-        List<T> result = new LinkedList<T>(target);
-        ListIterator<Delta<T>> it = getDeltas().listIterator(deltas.size());
-        while (it.hasPrevious()) {
-            Delta<T> delta = (Delta<T>) it.previous();
-            delta.applyTo(result);
+        List<Delta<T>> deltas = getDeltas();
+        if (!(target instanceof RandomAccess)) {
+            target = new ArrayList<T>(target);
         }
+        int size = target.size();
+        for (Delta<T> delta : deltas) {
+            size += delta.getRevised().size() - delta.getOriginal().size();
+        }
+        List<T> result = new ArrayList<T>(Math.max(size, 0));
+        int position = 0;
+        for (Delta<T> delta : deltas) {
+            Chunk<T> original = delta.getOriginal();
+            if (original.getPosition() < position) {
+                throw new PatchFailedException("Incorrect patch for delta: "
+                        + "delta original position overlaps the previous delta");
+            }
+            delta.verify(target);
+            result.addAll(target.subList(position, original.getPosition()));
+            result.addAll(delta.getRevised().getLines());
+            position = original.getPosition() + original.size();
+        }
+        result.addAll(target.subList(position, target.size()));
         return result;
     }
     
+    /**
+     * Apply this patch to the given target on a ForkJoinPool. The result is the
+     * same as the one of {@link #applyTo(List)}: the deltas are split into
+     * ranges which are verified and copied into the result concurrently. The
+     * first delta failing its verification stops the others. The returned list
+     * is resizable and wraps the array the deltas were copied into.
+     * @param target the given target
+     * @param pool the pool applying the deltas
+     * @return the patched text
+     * @throws PatchFailedException if can't apply patch
+     */
+    public List<T> applyTo(List<T> target, ForkJoinPool pool) throws PatchFailedException {
+        if (target == null) {
+            throw new IllegalArgumentException("target must not be null");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("pool must not be null");
+        }
+        return ParallelApply.apply(target, getDeltas(), pool);
+    }
+
+    /**
+     * Apply this patch to a text which may differ slightly from the one it was
+     * computed for. A delta which does not match at its position is looked
+     * for nearby, and if needed up to {@code maxFuzz} of the context lines at
+     * each of its ends are ignored, as GNU patch does. The offset of a delta
+     * carries over to the next ones.
+     * @param target the given target
+     * @param maxOffset how many lines before or after its position a delta
+     *        may be found
+     * @param maxFuzz how many context lines at each end of a delta may be
+     *        ignored
+     * @return the patched text, with the offset and fuzz used for every delta
+     * @throws PatchFailedException if some delta can't be placed
+     */
+    public FuzzyPatchResult<T> applyFuzzy(List<T> target, int maxOffset, int maxFuzz)
+            throws PatchFailedException {
+        if (target == null) {
+            throw new IllegalArgumentException("target must not be null");
+        }
+        if (maxOffset < 0 || maxFuzz < 0) {
+            throw new IllegalArgumentException("maxOffset and maxFuzz must not be negative");
+        }
+        return new FuzzyApply<T>(target, maxOffset, maxFuzz).apply(getDeltas());
+    }
+    
     /**
      * Restore the text to original. Opposite to applyTo() method.
      * @param target the given target
      * @return the restored text
      */
     public List<T> restore(List<T> target) {
-        List<T> result = new LinkedList<T>(target);
-        ListIterator<Delta<T>> it = getDeltas().listIterator(deltas.size());
-        while (it.hasPrevious()) {
-            Delta<T> delta = (Delta<T>) it.previous();
-            delta.restore(result);
+        List<Delta<T>> deltas = getDeltas();
+        if (!(target instanceof RandomAccess)) {
+            target = new ArrayList<T>(target);
+        }
+        int size = target.size();
+        for (Delta<T> delta : deltas) {
+            size += delta.getOriginal().size() - delta.getRevised().size();
         }
+        List<T> result = new ArrayList<T>(Math.max(size, 0));
+        int position = 0;
+        for (Delta<T> delta : deltas) {
+            Chunk<T> revised = delta.getRevised();
+            result.addAll(target.subList(position, revised.getPosition()));
+            result.addAll(delta.getOriginal().getLines());
+            position = revised.getPosition() + revised.size();
+        }
+        result.addAll(target.subList(position, target.size()));
         return result;
     }
+
+    /**
+     * Apply this patch inside the given target instead of copying it. Every
+     * delta is verified before the target is changed, then the unchanged spans
+     * are moved to their new positions, each element at most once and one
+     * element at a time through get and set; {@link #applyInPlace(Object[], int)}
+     * moves whole spans with System.arraycopy instead. A patch
+     * changing the size of the text needs a resizable list, such as an
+     * ArrayList; a list from Arrays.asList only takes patches keeping its size,
+     * and throws UnsupportedOperationException for the others before it is
+     * changed.
+     * @param target the given target, a RandomAccess list, resizable if the
+     *        patch changes its size
+     * @throws PatchFailedException if can't apply patch; the target is then
+     *         left unchanged
+     */
+    public void applyInPlace(List<T> target) throws PatchFailedException {
+        if (target == null) {
+            throw new IllegalArgumentException("target must not be null");
+        }
+        InPlaceApply.apply(target, getDeltas(), false);
+    }
+
+    /**
+     * Restore the text to original inside the given target. Opposite to
+     * {@link #applyInPlace(List)}; the revised lines of every delta are
+     * verified before the target is changed. As there, a restore changing the
+     * size of the text needs a resizable list.
+     * @param target the given target, a RandomAccess list, resizable if the
+     *        restore changes its size
+     * @throws PatchFailedException if the target is not the revised text; it
+     *         is then left unchanged
+     */
+    public void restoreInPlace(List<T> target) throws PatchFailedException {
+        if (target == null) {
+            throw new IllegalArgumentException("target must not be null");
+        }
+        InPlaceApply.apply(target, getDeltas(), true);
+    }
     
     /**
-     * Add the given delta to this patch
+     * Apply this patch to the text in the first {@code size} elements of the
+     * given array. Every delta is verified before the array is changed, then
+     * each unchanged span is moved to its new position with a single
+     * System.arraycopy. The array needs room for the patched text; the
+     * elements after it are set to null.
+     * @param target the given target, at least as long as the patched text
+     * @param size the length of the text in the target
+     * @return the length of the patched text
+     * @throws PatchFailedException if can't apply patch; the target is then
+     *         left unchanged
+     */
+    public int applyInPlace(T[] target, int size) throws PatchFailedException {
+        if (target == null) {
+            throw new IllegalArgumentException("target must not be null");
+        }
+        return InPlaceApply.apply(target, size, getDeltas(), false);
+    }
+
+    /**
+     * Restore the text to original in the first {@code size} elements of the
+     * given array. Opposite to {@link #applyInPlace(Object[], int)}; the
+     * revised lines of every delta are verified before the array is changed.
+     * @param target the given target, at least as long as the restored text
+     * @param size the length of the text in the target
+     * @return the length of the restored text
+     * @throws PatchFailedException if the target is not the revised text; it
+     *         is then left unchanged
+     */
+    public int restoreInPlace(T[] target, int size) throws PatchFailedException {
+        if (target == null) {
+            throw new IllegalArgumentException("target must not be null");
+        }
+        return InPlaceApply.apply(target, size, getDeltas(), true);
+    }
+    
+    /**
+     * Returns the patch undoing this one: every delta has its original and
+     * revised chunks swapped, so inserts become deletes and the other way
+     * round.
+     * @return the inverted patch
+     */
+    public Patch<T> invert() {
+        return PatchOperations.invert(this);
+    }
+
+    /**
+     * Combines this patch with the patch applying to its result, without the
+     * texts: the deltas of both patches are swept once in the order of the
+     * text in between, and the ones overlapping or touching there become a
+     * single delta. Such a delta disappears if the next patch undoes it.
+     * @param next the patch from the revised text of this patch to a newer one
+     * @return the patch from the original text of this patch to the revised
+     *         text of {@code next}
+     * @throws IllegalArgumentException if the revised chunks of this patch and
+     *         the original chunks of {@code next} disagree on their positions
+     */
+    public Patch<T> compose(Patch<T> next) {
+        if (next == null) {
+            throw new IllegalArgumentException("next must not be null");
+        }
+        return PatchOperations.compose(this, next);
+    }
+
+    /**
+     * Transforms this patch so that it applies after {@code other}, when both
+     * were computed from the same original text. The deltas keep their lines
+     * and are moved by what the deltas of {@code other} before them insert or
+     * delete. A delta which {@code other} already contains is dropped.
+     * @param other a patch of the same original text
+     * @return the patch from the revised text of {@code other} to that text
+     *         with the changes of this patch
+     * @throws PatchFailedException if a delta overlaps or touches a different
+     *         delta of {@code other}
+     */
+    public Patch<T> rebase(Patch<T> other) throws PatchFailedException {
+        if (other == null) {
+            throw new IllegalArgumentException("other must not be null");
+        }
+        return PatchOperations.rebase(this, other);
+    }
+
+    /**
+     * Add the given delta to this patch. The deltas are kept sorted by their
+     * original position; a delta at the same position as deltas already added
+     * goes after them. Adding the deltas in order only appends.
      * @param delta the given delta
+     * @throws IllegalStateException if the patch is sealed
      */
     public void addDelta(Delta<T> delta) {
-        deltas.add(delta);
+        if (sealed) {
+            throw new IllegalStateException("the patch is sealed");
+        }
+        int size = deltas.size();
+        if (size == 0 || DeltaComparator.INSTANCE.compare(deltas.get(size - 1), delta) <= 0) {
+            deltas.add(delta);
+            return;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (DeltaComparator.INSTANCE.compare(deltas.get(mid), delta) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        deltas.add(low, delta);
     }
 
     /**
      * Get the list of computed deltas
-     * @return the deltas
+     * @return the deltas, sorted by their original position. The list is an
+     *         unmodifiable view, use {@link #addDelta} to change it.
      */
     public List<Delta<T>> getDeltas() {
-        Collections.sort(deltas, DeltaComparator.INSTANCE);
-        return deltas;
+        return unmodifiableDeltas;
+    }
+
+    /**
+     * Tells whether this patch is only an approximation of the difference:
+     * a cost limit or a timeout of the algorithm made it report some region
+     * as changed as a whole instead of searching it. Applying the patch still
+     * gives the revised text, but it is not a minimal edit script.
+     * @return true if the patch is approximate
+     */
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    /**
+     * @param approximate whether this patch is approximate
+     * @throws IllegalStateException if the patch is sealed
+     */
+    public void setApproximate(boolean approximate) {
+        if (sealed) {
+            throw new IllegalStateException("the patch is sealed");
+        }
+        this.approximate = approximate;
+    }
+
+    /**
+     * Seals this patch: no delta can be added anymore. A sealed patch never
+     * changes, so once it is published it can be read from several threads
+     * without synchronization.
+     * @return this patch
+     */
+    public Patch<T> seal() {
+        if (!sealed) {
+            deltas.trimToSize();
+            sealed = true;
+        }
+        return this;
+    }
+
+    /**
+     * @return whether this patch is sealed
+     */
+    public boolean isSealed() {
+        return sealed;
     }
 }
@@ -0,0 +1,345 @@
+package utils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact binary encoding of {@code Patch<String>}, for storing many
+ * patches.
+ * <p>
+ * Every distinct line is written once in a string table, and the chunks refer
+ * to it by index. Numbers are unsigned LEB128 varints. Chunk positions are
+ * written relative to the end of the previous delta, so they mostly take one
+ * byte. The body can be deflated. The layout is:
+ * </p>
+ * <pre>
+ * 'J' 'D' 'P' version flags
+ * [rawLength compressedLength] body    -- lengths only if FLAG_DEFLATE
+ * body:  lineCount (byteLength utf8Bytes)* deltaCount delta*
+ * delta: type originalGap originalSize revisedShift revisedSize lineIndex*
+ * </pre>
+ * <p>
+ * {@link #decode(ByteBuffer)} reads straight from the buffer, without going
+ * through a stream, and leaves it positioned after the patch so that patches
+ * can be stored back to back. Repeated lines decode to the same String.
+ * </p>
+ */
+public final class PatchCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] MAGIC = { 'J', 'D', 'P' };
+    private static final int VERSION = 1;
+
+    private static final int FLAG_DEFLATE = 1;
+    private static final int FLAG_APPROXIMATE = 2;
+
+    /** Inflated data is at most about this many times its compressed length. */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final Delta.TYPE[] TYPES = Delta.TYPE.values();
+
+    private PatchCodec() {
+    }
+
+    /**
+     * Encodes the given patch.
+     *
+     * @param patch the patch. Must not be {@code null}.
+     * @param deflate whether to compress the body.
+     * @return the encoded patch.
+     */
+    public static byte[] encode(Patch<String> patch, boolean deflate) {
+        if (patch == null) {
+            throw new IllegalArgumentException("patch must not be null");
+        }
+        List<Delta<String>> deltas = patch.getDeltas();
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        List<String> table = new ArrayList<String>();
+        for (Delta<String> delta : deltas) {
+            addLines(delta.getOriginal().getLines(), ids, table);
+            addLines(delta.getRevised().getLines(), ids, table);
+        }
+
+        Output body = new Output(64 + 16 * deltas.size());
+        body.writeVarint(table.size());
+        for (String line : table) {
+            byte[] bytes = line.getBytes(UTF_8);
+            body.writeVarint(bytes.length);
+            body.write(bytes, 0, bytes.length);
+        }
+        body.writeVarint(deltas.size());
+        int originalEnd = 0;
+        int shift = 0;
+        for (Delta<String> delta : deltas) {
+            Chunk<String> original = delta.getOriginal();
+            Chunk<String> revised = delta.getRevised();
+            body.writeByte(delta.getType().ordinal());
+            body.writeVarint(zigzag(original.getPosition() - originalEnd));
+            body.writeVarint(original.size());
+            body.writeVarint(zigzag(revised.getPosition() - original.getPosition() - shift));
+            body.writeVarint(revised.size());
+            for (String line : original.getLines()) {
+                body.writeVarint(ids.get(line));
+            }
+            for (String line : revised.getLines()) {
+                body.writeVarint(ids.get(line));
+            }
+            originalEnd = original.getPosition() + original.size();
+            shift += revised.size() - original.size();
+        }
+
+        int flags = (deflate ? FLAG_DEFLATE : 0) | (patch.isApproximate() ? FLAG_APPROXIMATE : 0);
+        Output out = new Output(body.size + 16);
+        out.write(MAGIC, 0, MAGIC.length);
+        out.writeByte(VERSION);
+        out.writeByte(flags);
+        if (deflate) {
+            Deflater deflater = new Deflater();
+            try {
+                deflater.setInput(body.bytes, 0, body.size);
+                deflater.finish();
+                Output compressed = new Output(body.size / 2 + 64);
+                while (!deflater.finished()) {
+                    compressed.ensure(1024);
+                    compressed.size += deflater.deflate(compressed.bytes, compressed.size,
+                            compressed.bytes.length - compressed.size);
+                }
+                out.writeVarint(body.size);
+                out.writeVarint(compressed.size);
+                out.write(compressed.bytes, 0, compressed.size);
+            } finally {
+                deflater.end();
+            }
+        } else {
+            out.write(body.bytes, 0, body.size);
+        }
+        return Arrays.copyOf(out.bytes, out.size);
+    }
+
+    /**
+     * Decodes a patch from the position of the given buffer, and moves the
+     * position after it.
+     *
+     * @param buffer the buffer. Must not be {@code null}.
+     * @return the patch. Never {@code null}.
+     * @throws DiffException if the bytes are not an encoded patch.
+     */
+    public static Patch<String> decode(ByteBuffer buffer) throws DiffException {
+        if (buffer == null) {
+            throw new IllegalArgumentException("buffer must not be null");
+        }
+        try {
+            for (byte b : MAGIC) {
+                if (buffer.get() != b) {
+                    throw new DiffException("Not an encoded patch");
+                }
+            }
+            int version = buffer.get();
+            if (version != VERSION) {
+                throw new DiffException("Unsupported patch encoding version " + version);
+            }
+            int flags = buffer.get();
+            ByteBuffer body = buffer;
+            if ((flags & FLAG_DEFLATE) != 0) {
+                body = inflate(buffer);
+            }
+            Patch<String> patch = decodeBody(body);
+            patch.setApproximate((flags & FLAG_APPROXIMATE) != 0);
+            return patch;
+        } catch (BufferUnderflowException e) {
+            throw new DiffException("Truncated patch encoding");
+        } catch (IndexOutOfBoundsException e) {
+            throw new DiffException("Corrupt patch encoding");
+        }
+    }
+
+    private static Patch<String> decodeBody(ByteBuffer in) throws DiffException {
+        String[] table = new String[readLength(in)];
+        byte[] scratch = null;
+        for (int i = 0; i < table.length; i++) {
+            int length = readLength(in);
+            if (in.hasArray()) {
+                table[i] = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+                in.position(in.position() + length);
+            } else {
+                if (scratch == null || scratch.length < length) {
+                    scratch = new byte[Math.max(length, 256)];
+                }
+                in.get(scratch, 0, length);
+                table[i] = new String(scratch, 0, length, UTF_8);
+            }
+        }
+
+        int count = readLength(in);
+        Patch<String> patch = new Patch<String>();
+        int originalEnd = 0;
+        int shift = 0;
+        for (int i = 0; i < count; i++) {
+            int type = in.get();
+            if (type < 0 || type >= TYPES.length) {
+                throw new DiffException("Corrupt patch encoding: delta type " + type);
+            }
+            int originalPosition = originalEnd + unzigzag(readVarint(in));
+            int originalSize = readLength(in);
+            int revisedPosition = originalPosition + shift + unzigzag(readVarint(in));
+            int revisedSize = readLength(in);
+            List<String> originalLines = readLines(in, table, originalSize);
+            List<String> revisedLines = readLines(in, table, revisedSize);
+            Chunk<String> original = new Chunk<String>(originalPosition, originalLines);
+            Chunk<String> revised = new Chunk<String>(revisedPosition, revisedLines);
+            switch (TYPES[type]) {
+            case DELETE:
+                patch.addDelta(new DeleteDelta<String>(original, revised));
+                break;
+            case INSERT:
+                patch.addDelta(new InsertDelta<String>(original, revised));
+                break;
+            default:
+                patch.addDelta(new ChangeDelta<String>(original, revised));
+                break;
+            }
+            originalEnd = originalPosition + original.size();
+            shift += revised.size() - original.size();
+        }
+        return patch;
+    }
+
+    private static List<String> readLines(ByteBuffer in, String[] table, int size)
+            throws DiffException {
+        List<String> lines = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            lines.add(table[readVarint(in)]);
+        }
+        return lines;
+    }
+
+    private static ByteBuffer inflate(ByteBuffer in) throws DiffException {
+        int rawLength = readVarint(in);
+        int compressedLength = readLength(in);
+        if (rawLength < 0 || rawLength > (long) compressedLength * MAX_DEFLATE_RATIO + 64) {
+            // checked before allocating, a corrupt length could ask for gigabytes
+            throw new DiffException("Corrupt patch encoding: length " + rawLength);
+        }
+        byte[] input;
+        int offset;
+        if (in.hasArray()) {
+            input = in.array();
+            offset = in.arrayOffset() + in.position();
+            in.position(in.position() + compressedLength);
+        } else {
+            input = new byte[compressedLength];
+            offset = 0;
+            in.get(input);
+        }
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input, offset, compressedLength);
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, rawLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != rawLength) {
+                throw new DiffException("Truncated patch encoding");
+            }
+        } catch (DataFormatException e) {
+            throw new DiffException("Corrupt patch encoding: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    private static void addLines(List<String> lines, Map<String, Integer> ids, List<String> table) {
+        for (String line : lines) {
+            if (!ids.containsKey(line)) {
+                ids.put(line, table.size());
+                table.add(line);
+            }
+        }
+    }
+
+    private static int readVarint(ByteBuffer in) throws DiffException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new DiffException("Corrupt patch encoding: varint too long");
+    }
+
+    /**
+     * Reads a count of items which take at least one byte each, so a corrupt
+     * count is rejected before anything is allocated for it.
+     */
+    private static int readLength(ByteBuffer in) throws DiffException {
+        int length = readVarint(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new DiffException("Truncated patch encoding");
+        }
+        return length;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * A growable byte array.
+     */
+    private static final class Output {
+        byte[] bytes;
+        int size;
+
+        Output(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void write(byte[] src, int offset, int length) {
+            ensure(length);
+            System.arraycopy(src, offset, bytes, size, length);
+            size += length;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Composition, inversion and rebasing of patches. All of them work on the
+ * chunk positions and the lines the deltas carry; the texts the patches apply
+ * to are never needed.
+ */
+final class PatchOperations {
+
+    private PatchOperations() {
+    }
+
+    /**
+     * @see Patch#invert()
+     */
+    static <T> Patch<T> invert(Patch<T> patch) {
+        Patch<T> result = new Patch<T>();
+        result.setApproximate(patch.isApproximate());
+        for (Delta<T> delta : patch.getDeltas()) {
+            result.addDelta(newDelta(delta.getRevised(), delta.getOriginal()));
+        }
+        return result;
+    }
+
+    /**
+     * @see Patch#compose(Patch)
+     */
+    static <T> Patch<T> compose(Patch<T> first, Patch<T> second) {
+        List<Delta<T>> a = first.getDeltas();
+        List<Delta<T>> b = second.getDeltas();
+        Patch<T> result = new Patch<T>();
+        result.setApproximate(first.isApproximate() || second.isApproximate());
+        int i = 0;
+        int j = 0;
+        // how much the deltas before the current group grow the text
+        int shiftA = 0;
+        int shiftB = 0;
+        while (i < a.size() || j < b.size()) {
+            // a group of the deltas overlapping or touching in the middle text
+            int start;
+            if (j == b.size() || i < a.size()
+                    && a.get(i).getRevised().getPosition() <= b.get(j).getOriginal().getPosition()) {
+                start = a.get(i).getRevised().getPosition();
+            } else {
+                start = b.get(j).getOriginal().getPosition();
+            }
+            int end = start;
+            int i0 = i;
+            int j0 = j;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                while (i < a.size() && a.get(i).getRevised().getPosition() <= end) {
+                    end = Math.max(end, end(a.get(i).getRevised()));
+                    i++;
+                    grown = true;
+                }
+                while (j < b.size() && b.get(j).getOriginal().getPosition() <= end) {
+                    end = Math.max(end, end(b.get(j).getOriginal()));
+                    j++;
+                    grown = true;
+                }
+            }
+
+            // the middle lines of the group are covered by the chunks of a or b:
+            // a tells what they were before, b what they become
+            List<T> before = sweep(a, i0, i, b, j0, j, start, end, true);
+            List<T> after = sweep(b, j0, j, a, i0, i, start, end, false);
+            if (!before.equals(after)) {
+                result.addDelta(newDelta(new Chunk<T>(start - shiftA, before),
+                        new Chunk<T>(start + shiftB, after)));
+            }
+            for (int k = i0; k < i; k++) {
+                shiftA += a.get(k).getRevised().size() - a.get(k).getOriginal().size();
+            }
+            for (int k = j0; k < j; k++) {
+                shiftB += b.get(k).getRevised().size() - b.get(k).getOriginal().size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds one side of a group of the middle text {@code [start, end)}.
+     * The positions covered by the {@code own} deltas contribute their lines
+     * of that side; the others are covered by the {@code other} deltas, which
+     * leave them unchanged, so their middle lines are taken.
+     *
+     * @param before true to rebuild the text before the first patch (own is
+     *            the first patch, keyed by revised position), false to rebuild
+     *            the text after the second one (own is the second patch,
+     *            keyed by original position).
+     */
+    private static <T> List<T> sweep(List<Delta<T>> own, int ownFrom, int ownTo,
+            List<Delta<T>> other, int otherFrom, int otherTo, int start, int end, boolean before) {
+        List<T> result = new ArrayList<T>();
+        int position = start;
+        int i = ownFrom;
+        int j = otherFrom;
+        while (position < end || i < ownTo) {
+            if (i < ownTo) {
+                Delta<T> delta = own.get(i);
+                Chunk<T> middle = before ? delta.getRevised() : delta.getOriginal();
+                if (middle.getPosition() == position) {
+                    result.addAll(before ? delta.getOriginal().getLines() : delta.getRevised().getLines());
+                    position = end(middle);
+                    i++;
+                    continue;
+                }
+            }
+            Chunk<T> covering = null;
+            while (j < otherTo) {
+                covering = before ? other.get(j).getOriginal() : other.get(j).getRevised();
+                if (end(covering) > position) {
+                    break;
+                }
+                j++;
+            }
+            if (j == otherTo || covering.getPosition() > position) {
+                throw new IllegalArgumentException("the patches do not chain at position " + position);
+            }
+            int stop = Math.min(end(covering), i < ownTo ? position(own.get(i), before) : end);
+            result.addAll(covering.getLines().subList(position - covering.getPosition(),
+                    stop - covering.getPosition()));
+            position = stop;
+        }
+        return result;
+    }
+
+    private static <T> int position(Delta<T> delta, boolean before) {
+        return before ? delta.getRevised().getPosition() : delta.getOriginal().getPosition();
+    }
+
+    /**
+     * @see Patch#rebase(Patch)
+     */
+    static <T> Patch<T> rebase(Patch<T> patch, Patch<T> other) throws PatchFailedException {
+        List<Delta<T>> deltas = patch.getDeltas();
+        List<Delta<T>> others = other.getDeltas();
+        Patch<T> result = new Patch<T>();
+        result.setApproximate(patch.isApproximate());
+        int j = 0;
+        // how much the deltas of the other patch before this one grow the text
+        int shift = 0;
+        // how much the deltas already put into the result grow the text
+        int growth = 0;
+        for (Delta<T> delta : deltas) {
+            Chunk<T> original = delta.getOriginal();
+            // the deltas of the other patch entirely before this one
+            while (j < others.size() && before(others.get(j).getOriginal(), original)) {
+                shift += others.get(j).getRevised().size() - others.get(j).getOriginal().size();
+                j++;
+            }
+            if (j < others.size() && !before(original, others.get(j).getOriginal())) {
+                Delta<T> conflicting = others.get(j);
+                if (conflicting.getOriginal().equals(original) && conflicting.getRevised()
+                        .getLines().equals(delta.getRevised().getLines())) {
+                    // the other patch made the same change already
+                    shift += conflicting.getRevised().size() - conflicting.getOriginal().size();
+                    j++;
+                    continue;
+                }
+                throw new PatchFailedException("Incorrect patch for delta: delta at original position "
+                        + original.getPosition() + " overlaps a delta of the other patch");
+            }
+            int position = original.getPosition() + shift;
+            result.addDelta(newDelta(new Chunk<T>(position, original.getLines()),
+                    new Chunk<T>(position + growth, delta.getRevised().getLines())));
+            growth += delta.getRevised().size() - original.size();
+        }
+        return result;
+    }
+
+    /**
+     * @return whether chunk {@code a} ends before chunk {@code b} starts. Two
+     *         chunks at the same position are not ordered if one is empty:
+     *         an insert there could go before or after the other one.
+     */
+    private static boolean before(Chunk<?> a, Chunk<?> b) {
+        if (a.size() == 0 || b.size() == 0) {
+            return end(a) < b.getPosition();
+        }
+        return end(a) <= b.getPosition();
+    }
+
+    private static int end(Chunk<?> chunk) {
+        return chunk.getPosition() + chunk.size();
+    }
+
+    static <T> Delta<T> newDelta(Chunk<T> original, Chunk<T> revised) {
+        if (original.size() == 0) {
+            return new InsertDelta<T>(original, revised);
+        }
+        if (revised.size() == 0) {
+            return new DeleteDelta<T>(original, revised);
+        }
+        return new ChangeDelta<T>(original, revised);
+    }
+}
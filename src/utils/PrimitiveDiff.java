@@ -0,0 +1,155 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * The Myers diff of primitive arrays, behind the
+ * {@code DiffUtils.diff(int[], int[])} family.
+ * <p>
+ * Nothing is boxed: the common prefix and suffix are skipped on the arrays
+ * themselves, and the remaining middle parts are copied once into int arrays
+ * which {@link MyersDiff.IntComparison} compares with {@code ==}. Chars and
+ * bytes are widened, longs are mapped to dense ids. The search itself does not
+ * allocate, and the result only records index ranges.
+ * </p>
+ */
+final class PrimitiveDiff {
+
+    private PrimitiveDiff() {
+    }
+
+    static IndexPatch diff(int[] original, int[] revised) {
+        int n = original.length;
+        int m = revised.length;
+        int prefix = 0;
+        while (prefix < n && prefix < m && original[prefix] == revised[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && original[n - 1 - suffix] == revised[m - 1 - suffix]) {
+            suffix++;
+        }
+        return diffMiddle(Arrays.copyOfRange(original, prefix, n - suffix),
+                Arrays.copyOfRange(revised, prefix, m - suffix), prefix);
+    }
+
+    static IndexPatch diff(long[] original, long[] revised) {
+        int n = original.length;
+        int m = revised.length;
+        int prefix = 0;
+        while (prefix < n && prefix < m && original[prefix] == revised[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && original[n - 1 - suffix] == revised[m - 1 - suffix]) {
+            suffix++;
+        }
+        int size = n - prefix - suffix + m - prefix - suffix;
+        int capacity = 64;
+        while (capacity < size * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        long[] keys = new long[capacity];
+        int[] ids = new int[capacity];
+        int[] a = new int[n - prefix - suffix];
+        int[] b = new int[m - prefix - suffix];
+        int distinct = 0;
+        for (int i = 0; i < a.length; i++) {
+            distinct = intern(keys, ids, distinct, original[prefix + i], a, i);
+        }
+        for (int i = 0; i < b.length; i++) {
+            distinct = intern(keys, ids, distinct, revised[prefix + i], b, i);
+        }
+        return diffMiddle(a, b, prefix);
+    }
+
+    static IndexPatch diff(char[] original, char[] revised) {
+        int n = original.length;
+        int m = revised.length;
+        int prefix = 0;
+        while (prefix < n && prefix < m && original[prefix] == revised[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && original[n - 1 - suffix] == revised[m - 1 - suffix]) {
+            suffix++;
+        }
+        int[] a = new int[n - prefix - suffix];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = original[prefix + i];
+        }
+        int[] b = new int[m - prefix - suffix];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = revised[prefix + i];
+        }
+        return diffMiddle(a, b, prefix);
+    }
+
+    static IndexPatch diff(byte[] original, byte[] revised) {
+        int n = original.length;
+        int m = revised.length;
+        int prefix = 0;
+        while (prefix < n && prefix < m && original[prefix] == revised[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && original[n - 1 - suffix] == revised[m - 1 - suffix]) {
+            suffix++;
+        }
+        int[] a = new int[n - prefix - suffix];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = original[prefix + i];
+        }
+        int[] b = new int[m - prefix - suffix];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = revised[prefix + i];
+        }
+        return diffMiddle(a, b, prefix);
+    }
+
+    /**
+     * Diffs the middle parts left after skipping a common prefix of the
+     * given length.
+     */
+    private static IndexPatch diffMiddle(int[] a, int[] b, int prefix) {
+        EditScript script = new EditScript(a.length, b.length);
+        if (a.length > 0 && b.length > 0) {
+            new MyersDiff.IntComparison(a, b).compare(script);
+        } else {
+            // one side is entirely common, whatever is left on the other one changed
+            Arrays.fill(script.originalChanged, true);
+            Arrays.fill(script.revisedChanged, true);
+        }
+        return script.toIndexPatch(prefix, prefix);
+    }
+
+    /**
+     * Stores the id of {@code value} at {@code target[index]}, giving it the
+     * next id if it is new. {@code keys} and {@code ids} form an open
+     * addressing table twice as large as the number of values, in which id
+     * {@code 0} marks a free slot, so ids are stored plus one.
+     *
+     * @return the number of distinct values seen so far.
+     */
+    private static int intern(long[] keys, int[] ids, int distinct, long value, int[] target,
+            int index) {
+        int mask = keys.length - 1;
+        long h = value * 0x9E3779B97F4A7C15L;
+        int i = (int) (h ^ (h >>> 32)) & mask;
+        while (ids[i] != 0) {
+            if (keys[i] == value) {
+                target[index] = ids[i] - 1;
+                return distinct;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = value;
+        ids[i] = ++distinct;
+        target[index] = distinct - 1;
+        return distinct;
+    }
+}
@@ -0,0 +1,138 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Merges two revisions of a common base text.
+ * <p>
+ * The base is diffed against both sides, the second diff on the given
+ * executor while the calling thread computes the first one. The deltas of the
+ * two patches are then swept once in the order of their base positions: deltas
+ * whose base ranges overlap or touch form a hunk. A hunk changed by one side
+ * only takes that side's lines; a hunk changed by both sides is resolved if
+ * both made the same lines of it, and is a conflict otherwise. After the diffs
+ * the merge takes time linear in the size of the texts.
+ * </p>
+ */
+final class ThreeWayMerge {
+
+    private ThreeWayMerge() {
+    }
+
+    static <T> MergeResult<T> merge(List<T> base, List<T> ours, final List<T> theirs,
+            final DiffUtils.Algorithm algorithm, Executor executor) {
+        final List<T> baseLines = base instanceof RandomAccess ? base : new ArrayList<T>(base);
+        FutureTask<Patch<T>> theirDiff = new FutureTask<Patch<T>>(new Callable<Patch<T>>() {
+            public Patch<T> call() {
+                return DiffUtils.diff(baseLines, theirs, algorithm);
+            }
+        });
+        executor.execute(theirDiff);
+        Patch<T> ourPatch;
+        Patch<T> theirPatch;
+        try {
+            ourPatch = DiffUtils.diff(baseLines, ours, algorithm);
+            theirPatch = theirDiff.get();
+        } catch (InterruptedException e) {
+            theirDiff.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("merge interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        } catch (RuntimeException e) {
+            theirDiff.cancel(true);
+            throw e;
+        }
+        return sweep(baseLines, ourPatch.getDeltas(), theirPatch.getDeltas());
+    }
+
+    private static <T> MergeResult<T> sweep(List<T> base, List<Delta<T>> ours,
+            List<Delta<T>> theirs) {
+        List<MergeResult.Hunk<T>> hunks = new ArrayList<MergeResult.Hunk<T>>();
+        int i = 0;
+        int j = 0;
+        // how much each side has grown before the current hunk
+        int ourShift = 0;
+        int theirShift = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            int start;
+            if (j == theirs.size() || i < ours.size()
+                    && position(ours.get(i)) <= position(theirs.get(j))) {
+                start = position(ours.get(i));
+            } else {
+                start = position(theirs.get(j));
+            }
+            int end = start;
+            int i0 = i;
+            int j0 = j;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                while (i < ours.size() && position(ours.get(i)) <= end) {
+                    end = Math.max(end, end(ours.get(i)));
+                    i++;
+                    grown = true;
+                }
+                while (j < theirs.size() && position(theirs.get(j)) <= end) {
+                    end = Math.max(end, end(theirs.get(j)));
+                    j++;
+                    grown = true;
+                }
+            }
+
+            List<T> ourLines = apply(base, ours, i0, i, start, end);
+            List<T> theirLines = apply(base, theirs, j0, j, start, end);
+            if (j0 == j) {
+                hunks.add(new MergeResult.Hunk<T>(start, end, ourLines, null));
+            } else if (i0 == i || ourLines.equals(theirLines)) {
+                hunks.add(new MergeResult.Hunk<T>(start, end, theirLines, null));
+            } else {
+                MergeResult.Conflict<T> conflict = new MergeResult.Conflict<T>(
+                        new Chunk<T>(start, new ArrayList<T>(base.subList(start, end))),
+                        new Chunk<T>(start + ourShift, ourLines),
+                        new Chunk<T>(start + theirShift, theirLines));
+                hunks.add(new MergeResult.Hunk<T>(start, end, null, conflict));
+            }
+            ourShift += ourLines.size() - (end - start);
+            theirShift += theirLines.size() - (end - start);
+        }
+        return new MergeResult<T>(base, hunks);
+    }
+
+    /**
+     * @return the base lines {@code [start, end)} with the deltas
+     *         {@code [from, to)} applied.
+     */
+    private static <T> List<T> apply(List<T> base, List<Delta<T>> deltas, int from, int to,
+            int start, int end) {
+        List<T> result = new ArrayList<T>();
+        int position = start;
+        for (int k = from; k < to; k++) {
+            Delta<T> delta = deltas.get(k);
+            result.addAll(base.subList(position, position(delta)));
+            result.addAll(delta.getRevised().getLines());
+            position = end(delta);
+        }
+        result.addAll(base.subList(position, end));
+        return result;
+    }
+
+    private static int position(Delta<?> delta) {
+        return delta.getOriginal().getPosition();
+    }
+
+    private static int end(Delta<?> delta) {
+        return delta.getOriginal().getPosition() + delta.getOriginal().size();
+    }
+}
@@ -0,0 +1,184 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses a unified diff covering several files, such as the output of
+ * {@code git diff} or {@code svn diff}, into one patch per file.
+ * <p>
+ * A first sequential pass only looks at the first characters of the lines to
+ * find the file boundaries: a {@code diff ...} line, or a {@code --- } line
+ * directly followed by a {@code +++ } line. The line counts of the hunk
+ * headers are followed, so a deleted line which happens to start with
+ * {@code --} is not taken for a file header. The sections are then parsed
+ * independently, in parallel on a {@link ForkJoinPool}.
+ * </p>
+ */
+final class UnifiedDiffFiles {
+
+    /** Below this many sections a task parses them itself instead of forking. */
+    private static final int SEQUENTIAL_THRESHOLD = 8;
+
+    private final List<String> diff;
+
+    /** The first line of each section, plus the size of the diff at the end. */
+    private int[] starts = new int[16];
+    private final List<String> names = new ArrayList<String>();
+
+    private UnifiedDiffFiles(List<String> diff) {
+        this.diff = diff instanceof RandomAccess ? diff : new ArrayList<String>(diff);
+    }
+
+    /**
+     * @param diff the lines of the diff.
+     * @param pool the pool parsing the sections.
+     * @return the patch of every file, keyed by file name in the order of the
+     *         diff. The name is the one of the {@code +++} line, or of the
+     *         {@code ---} line for deleted files, without a trailing
+     *         timestamp.
+     */
+    static Map<String, Patch<String>> parse(List<String> diff, ForkJoinPool pool) {
+        UnifiedDiffFiles files = new UnifiedDiffFiles(diff);
+        int count = files.split();
+        // the tasks only set their own indices
+        List<Patch<String>> patches = new ArrayList<Patch<String>>(
+                Collections.<Patch<String>> nCopies(count, null));
+        pool.invoke(files.new ParseTask(patches, 0, count));
+
+        Map<String, Patch<String>> result = new LinkedHashMap<String, Patch<String>>();
+        for (int i = 0; i < count; i++) {
+            String name = files.names.get(i);
+            if (name == null) {
+                // a section without content, e.g. a mode change or binary file
+                continue;
+            }
+            Patch<String> patch = result.get(name);
+            if (patch == null) {
+                result.put(name, patches.get(i));
+            } else {
+                for (Delta<String> delta : patches.get(i).getDeltas()) {
+                    patch.addDelta(delta);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the sections of the diff.
+     *
+     * @return the number of sections.
+     */
+    private int split() {
+        UnifiedDiffParser headers = new UnifiedDiffParser();
+        int count = 0;
+        boolean named = false;
+        int oldLeft = 0;
+        int newLeft = 0;
+        int size = diff.size();
+        for (int i = 0; i < size; i++) {
+            String line = diff.get(i);
+            if (oldLeft > 0 || newLeft > 0) {
+                char tag = line.length() == 0 ? ' ' : line.charAt(0);
+                if (tag == ' ') {
+                    oldLeft--;
+                    newLeft--;
+                    continue;
+                } else if (tag == '-') {
+                    oldLeft--;
+                    continue;
+                } else if (tag == '+') {
+                    newLeft--;
+                    continue;
+                } else if (tag == '\\') {
+                    continue;
+                }
+                // the hunk is shorter than announced
+                oldLeft = 0;
+                newLeft = 0;
+            }
+
+            if (headers.parseHeader(line)) {
+                oldLeft = headers.headerOldSize();
+                newLeft = headers.headerNewSize();
+            } else if (line.startsWith("diff ")) {
+                count = startSection(count, i);
+                named = false;
+            } else if (line.startsWith("--- ") && i + 1 < size && diff.get(i + 1).startsWith("+++ ")) {
+                if (count == 0 || named) {
+                    count = startSection(count, i);
+                }
+                names.set(count - 1, fileName(line, diff.get(i + 1)));
+                named = true;
+                i++;
+            }
+        }
+        starts[count] = size;
+        return count;
+    }
+
+    private int startSection(int count, int line) {
+        if (count + 2 > starts.length) {
+            int[] grown = new int[starts.length * 2];
+            System.arraycopy(starts, 0, grown, 0, count);
+            starts = grown;
+        }
+        starts[count] = line;
+        names.add(null);
+        return count + 1;
+    }
+
+    private static String fileName(String originalHeader, String revisedHeader) {
+        String name = headerName(revisedHeader);
+        if ("/dev/null".equals(name)) {
+            name = headerName(originalHeader);
+        }
+        return name;
+    }
+
+    /**
+     * @return the file name of a {@code ---} or {@code +++} line.
+     */
+    private static String headerName(String header) {
+        int end = header.indexOf('\t', 4);
+        return header.substring(4, end < 0 ? header.length() : end).trim();
+    }
+
+    /**
+     * Parses a range of sections, splitting it in two while it is large.
+     */
+    private final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Patch<String>> patches;
+        private final int from;
+        private final int to;
+
+        ParseTask(List<Patch<String>> patches, int from, int to) {
+            this.patches = patches;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    if (names.get(i) != null) {
+                        patches.set(i, DiffUtils.parseUnifiedDiff(diff.subList(starts[i], starts[i + 1])));
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ParseTask(patches, from, mid), new ParseTask(patches, mid, to));
+        }
+    }
+}
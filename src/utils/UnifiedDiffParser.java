@@ -0,0 +1,227 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the lines of a unified diff into deltas, one line at a time. Only the
+ * lines of the hunk being read are kept in memory; every hunk becomes a
+ * {@link ChangeDelta} including its context lines, as soon as the next hunk
+ * header (or the end of the input) shows that it is complete.
+ * <p>
+ * Lines are skipped until one starting with {@code +++} has been seen. Hunk
+ * headers are read with a hand-written scanner instead of a regular
+ * expression; text after the closing {@code @@} (such as the function name
+ * printed by git) is ignored.
+ * </p>
+ */
+final class UnifiedDiffParser {
+
+    private boolean inPrelude = true;
+
+    /** The one-based start lines of the hunk being read. */
+    private int oldLn;
+    private int newLn;
+
+    /** The ranges found by the last call of {@link #parseHeader}. */
+    private int headerOld;
+    private int headerNew;
+    private int headerOldSize;
+    private int headerNewSize;
+
+    /** The range read by the last call of {@link #scanRange}. */
+    private int scanned;
+    private int scannedSize;
+
+    /** The value read by the last call of {@link #scanNumber}. */
+    private int number;
+
+    private List<String> oldLines = new ArrayList<String>();
+    private List<String> newLines = new ArrayList<String>();
+    private boolean hasLines;
+
+    /**
+     * Feeds the next line of the diff.
+     *
+     * @param line the line, without its line terminator.
+     * @return the delta of the previous hunk if this line starts a new one,
+     *         otherwise {@code null}.
+     */
+    Delta<String> parseLine(String line) {
+        if (inPrelude) {
+            if (line.startsWith("+++")) {
+                inPrelude = false;
+            }
+            return null;
+        }
+        if (parseHeader(line)) {
+            Delta<String> delta = finish();
+            oldLn = headerOld == 0 ? 1 : headerOld;
+            newLn = headerNew == 0 ? 1 : headerNew;
+            return delta;
+        }
+        if (line.length() == 0) {
+            oldLines.add("");
+            newLines.add("");
+            hasLines = true;
+            return null;
+        }
+        switch (line.charAt(0)) {
+        case ' ':
+            String rest = line.substring(1);
+            oldLines.add(rest);
+            newLines.add(rest);
+            hasLines = true;
+            break;
+        case '-':
+            oldLines.add(line.substring(1));
+            hasLines = true;
+            break;
+        case '+':
+            newLines.add(line.substring(1));
+            hasLines = true;
+            break;
+        default:
+            // e.g. "\ No newline at end of file"
+            break;
+        }
+        return null;
+    }
+
+    /**
+     * Completes the hunk being read, to be called at the end of the input.
+     *
+     * @return its delta, or {@code null} if it has no lines.
+     */
+    Delta<String> finish() {
+        if (!hasLines) {
+            return null;
+        }
+        Delta<String> delta = new ChangeDelta<String>(new Chunk<String>(oldLn - 1, oldLines),
+                new Chunk<String>(newLn - 1, newLines));
+        oldLines = new ArrayList<String>();
+        newLines = new ArrayList<String>();
+        hasLines = false;
+        return delta;
+    }
+
+    /**
+     * @return the number of original lines announced by the last header
+     *         accepted by {@link #parseHeader}.
+     */
+    int headerOldSize() {
+        return headerOldSize;
+    }
+
+    /**
+     * @return the number of revised lines announced by the last header
+     *         accepted by {@link #parseHeader}.
+     */
+    int headerNewSize() {
+        return headerNewSize;
+    }
+
+    /**
+     * Scans a {@code @@ -l[,s] +l[,s] @@} hunk header. A missing size
+     * stands for one line.
+     *
+     * @return true and sets the header fields if the line is a header.
+     */
+    boolean parseHeader(String line) {
+        int len = line.length();
+        if (len < 2 || line.charAt(0) != '@' || line.charAt(1) != '@') {
+            return false;
+        }
+        int i = skipSpaces(line, 2);
+        if (i == 2 || i == len || line.charAt(i) != '-') {
+            return false;
+        }
+        i = scanRange(line, i + 1);
+        if (i < 0) {
+            return false;
+        }
+        int old = scanned;
+        int oldSize = scannedSize;
+
+        int j = skipSpaces(line, i);
+        if (j == i || j == len || line.charAt(j) != '+') {
+            return false;
+        }
+        i = scanRange(line, j + 1);
+        if (i < 0) {
+            return false;
+        }
+        int rev = scanned;
+        int revSize = scannedSize;
+
+        j = skipSpaces(line, i);
+        if (j == i || !line.startsWith("@@", j)) {
+            return false;
+        }
+        j += 2;
+        if (j < len && !isSpace(line.charAt(j))) {
+            return false;
+        }
+        headerOld = old;
+        headerNew = rev;
+        headerOldSize = oldSize;
+        headerNewSize = revSize;
+        return true;
+    }
+
+    /**
+     * Scans {@code line[,size]} from position i.
+     *
+     * @return the position after the range, or -1 if there is none.
+     */
+    private int scanRange(String line, int i) {
+        int end = scanNumber(line, i);
+        if (end < 0) {
+            return -1;
+        }
+        int start = number;
+        int size = 1;
+        if (end < line.length() && line.charAt(end) == ',') {
+            end = scanNumber(line, end + 1);
+            if (end < 0) {
+                return -1;
+            }
+            size = number;
+        }
+        scanned = start;
+        scannedSize = size;
+        return end;
+    }
+
+    private int scanNumber(String line, int i) {
+        int start = i;
+        int value = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (value > (Integer.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            i++;
+        }
+        if (i == start) {
+            return -1;
+        }
+        number = value;
+        return i;
+    }
+
+    private static int skipSpaces(String line, int i) {
+        while (i < line.length() && isSpace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\f' || c == '\u000B' || c == '\r' || c == '\n';
+    }
+}
@@ -0,0 +1,154 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the deltas of a unified diff from a stream, one hunk at a time.
+ * <p>
+ * Unlike {@link DiffUtils#parseUnifiedDiff(java.util.List)} the diff does not
+ * need to be in memory: every hunk is handed out as a {@link ChangeDelta} as
+ * soon as it is complete, so memory is bounded by the largest hunk. The deltas
+ * are the same as the ones the list based parser puts into its patch.
+ * </p>
+ * <pre>
+ * UnifiedDiffReader reader = new UnifiedDiffReader(channel, charset);
+ * try {
+ *     Delta&lt;String&gt; delta;
+ *     while ((delta = reader.read()) != null) {
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ * The reader is also an {@link Iterator}; its methods throw an
+ * {@link UncheckedIOException} if the underlying stream fails.
+ */
+public class UnifiedDiffReader implements Iterator<Delta<String>>, Closeable {
+
+    private final BufferedReader reader;
+    private final UnifiedDiffParser parser = new UnifiedDiffParser();
+    private boolean finished;
+
+    /** A delta read ahead by {@link #hasNext()}. */
+    private Delta<String> next;
+
+    /**
+     * @param reader the diff text. Must not be {@code null}.
+     */
+    public UnifiedDiffReader(Reader reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException("reader must not be null");
+        }
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader
+                : new BufferedReader(reader);
+    }
+
+    /**
+     * @param in the diff bytes. Must not be {@code null}.
+     * @param charset the encoding of the diff. Must not be {@code null}.
+     */
+    public UnifiedDiffReader(InputStream in, Charset charset) {
+        this(new InputStreamReader(in, charset));
+    }
+
+    /**
+     * @param channel the diff bytes. Must not be {@code null}.
+     * @param charset the encoding of the diff. Must not be {@code null}.
+     */
+    public UnifiedDiffReader(ReadableByteChannel channel, Charset charset) {
+        this(Channels.newReader(channel, charset.newDecoder(), -1));
+    }
+
+    /**
+     * Reads the next hunk.
+     *
+     * @return the delta of the hunk, or {@code null} at the end of the diff.
+     * @throws IOException if the diff cannot be read.
+     */
+    public Delta<String> read() throws IOException {
+        if (next != null) {
+            Delta<String> delta = next;
+            next = null;
+            return delta;
+        }
+        if (finished) {
+            return null;
+        }
+        String line;
+        while ((line = reader.readLine()) != null) {
+            Delta<String> delta = parser.parseLine(line);
+            if (delta != null) {
+                return delta;
+            }
+        }
+        finished = true;
+        return parser.finish();
+    }
+
+    /**
+     * Reads all the remaining hunks into a patch.
+     *
+     * @return the patch. Never {@code null}.
+     * @throws IOException if the diff cannot be read.
+     */
+    public Patch<String> readPatch() throws IOException {
+        Patch<String> patch = new Patch<String>();
+        Delta<String> delta;
+        while ((delta = read()) != null) {
+            patch.addDelta(delta);
+        }
+        return patch;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Delta<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Delta<String> delta = next;
+        next = null;
+        return delta;
+    }
+
+    /**
+     * Not supported.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Closes the underlying stream.
+     */
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,210 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a patch in unified diff format straight to an {@link Appendable},
+ * such as a {@link java.io.Writer} or a {@link StringBuilder}.
+ * <p>
+ * The output is the same as the one of
+ * {@link DiffUtils#generateUnifiedDiff(String, String, List, Patch, int)},
+ * with a {@code '\n'} after every line, but nothing is materialized: the
+ * {@code @@} header of a hunk is computed from the chunk sizes before the
+ * hunk body is written, and the line prefixes are appended as single chars.
+ * </p>
+ */
+public class UnifiedDiffWriter implements Flushable, Closeable {
+
+    private final Appendable out;
+
+    /**
+     * For subclasses which override both writeLine methods.
+     */
+    private UnifiedDiffWriter() {
+        out = null;
+    }
+
+    /**
+     * @param out the destination of the diff text. Must not be {@code null}.
+     */
+    public UnifiedDiffWriter(Appendable out) {
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null");
+        }
+        this.out = out;
+    }
+
+    /**
+     * @param out the destination of the diff bytes. Must not be {@code null}.
+     * @param charset the encoding of the diff. Must not be {@code null}.
+     */
+    public UnifiedDiffWriter(OutputStream out, Charset charset) {
+        this(new OutputStreamWriter(out, charset));
+    }
+
+    /**
+     * @param channel the destination of the diff bytes. Must not be {@code null}.
+     * @param charset the encoding of the diff. Must not be {@code null}.
+     */
+    public UnifiedDiffWriter(WritableByteChannel channel, Charset charset) {
+        this(Channels.newWriter(channel, charset.newEncoder(), -1));
+    }
+
+    /**
+     * Writes the given patch in unified diff format. Nothing is written if the
+     * patch has no deltas.
+     *
+     * @param original
+     *            - Filename of the original (unrevised file)
+     * @param revised
+     *            - Filename of the revised file
+     * @param originalLines
+     *            - Lines of the original file
+     * @param patch
+     *            - Patch created by the diff() function
+     * @param contextSize
+     *            - number of lines of context output around each difference in
+     *            the file.
+     * @throws IOException if the destination fails.
+     */
+    public void write(String original, String revised, List<String> originalLines,
+            Patch<String> patch, int contextSize) throws IOException {
+        List<Delta<String>> deltas = patch.getDeltas();
+        if (deltas.isEmpty()) {
+            return;
+        }
+        writeLine("--- " + original);
+        writeLine("+++ " + revised);
+
+        // deltas close enough to share their context go into the same hunk
+        int first = 0;
+        for (int i = 1; i < deltas.size(); i++) {
+            Chunk<String> previous = deltas.get(i - 1).getOriginal();
+            Chunk<String> next = deltas.get(i).getOriginal();
+            if (previous.getPosition() + previous.size() + contextSize < next.getPosition() - contextSize) {
+                writeHunk(originalLines, deltas, first, i, contextSize);
+                first = i;
+            }
+        }
+        writeHunk(originalLines, deltas, first, deltas.size(), contextSize);
+    }
+
+    /**
+     * Writes the given patch in unified diff format into a list of lines,
+     * without line terminators.
+     *
+     * @see DiffUtils#generateUnifiedDiff(String, String, List, Patch, int)
+     */
+    static List<String> toLines(String original, String revised, List<String> originalLines,
+            Patch<String> patch, int contextSize) {
+        final List<String> lines = new ArrayList<String>();
+        UnifiedDiffWriter writer = new UnifiedDiffWriter() {
+            void writeLine(char tag, String line) {
+                lines.add(tag + line);
+            }
+
+            void writeLine(String line) {
+                lines.add(line);
+            }
+        };
+        try {
+            writer.write(original, revised, originalLines, patch, contextSize);
+        } catch (IOException e) {
+            // the lines only go to memory
+            throw new IllegalStateException(e);
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the deltas {@code [from, to)} as one hunk.
+     */
+    private void writeHunk(List<String> origLines, List<Delta<String>> deltas, int from, int to,
+            int contextSize) throws IOException {
+        Delta<String> firstDelta = deltas.get(from);
+        Delta<String> lastDelta = deltas.get(to - 1);
+
+        // NOTE: +1 to overcome the 0-offset Position
+        int origStart = Math.max(firstDelta.getOriginal().getPosition() + 1 - contextSize, 1);
+        int revStart = Math.max(firstDelta.getRevised().getPosition() + 1 - contextSize, 1);
+        int contextStart = Math.max(firstDelta.getOriginal().getPosition() - contextSize, 0);
+        int contextEnd = lastDelta.getOriginal().getPosition() + lastDelta.getOriginal().size();
+        int trailingEnd = Math.min(contextEnd + contextSize, origLines.size());
+
+        // every original line of the hunk which is not in a delta is context
+        int origTotal = Math.max(trailingEnd, contextEnd) - contextStart;
+        int revTotal = origTotal;
+        for (int i = from; i < to; i++) {
+            revTotal += deltas.get(i).getRevised().size() - deltas.get(i).getOriginal().size();
+        }
+        writeHeader(origStart, origTotal, revStart, revTotal);
+
+        int line = contextStart;
+        for (int i = from; i < to; i++) {
+            Delta<String> delta = deltas.get(i);
+            for (; line < delta.getOriginal().getPosition(); line++) {
+                writeLine(' ', origLines.get(line));
+            }
+            for (String text : delta.getOriginal().getLines()) {
+                writeLine('-', text);
+            }
+            for (String text : delta.getRevised().getLines()) {
+                writeLine('+', text);
+            }
+            line = delta.getOriginal().getPosition() + delta.getOriginal().size();
+        }
+        for (; line < trailingEnd; line++) {
+            writeLine(' ', origLines.get(line));
+        }
+    }
+
+    private void writeHeader(int origStart, int origTotal, int revStart, int revTotal)
+            throws IOException {
+        StringBuilder header = new StringBuilder(32);
+        header.append("@@ -").append(origStart).append(',').append(origTotal);
+        header.append(" +").append(revStart).append(',').append(revTotal);
+        header.append(" @@");
+        writeLine(header.toString());
+    }
+
+    /**
+     * Writes a line of the hunk body.
+     */
+    void writeLine(char tag, String line) throws IOException {
+        out.append(tag).append(line).append('\n');
+    }
+
+    /**
+     * Writes a header line.
+     */
+    void writeLine(String line) throws IOException {
+        out.append(line).append('\n');
+    }
+
+    /**
+     * Flushes the destination if it is {@link Flushable}.
+     */
+    public void flush() throws IOException {
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    /**
+     * Closes the destination if it is {@link Closeable}.
+     */
+    public void close() throws IOException {
+        if (out instanceof Closeable) {
+            ((Closeable) out).close();
+        }
+    }
+}